@@ -23,11 +23,21 @@ dependencies {
     annotationProcessor("org.projectlombok:lombok")
     // 工具类（处理ISO 8601时长、日期等）
     implementation("org.apache.commons:commons-lang3")
+    // 进程内缓存（版本由 Spring Boot 管理）
+    implementation("com.github.ben-manes.caffeine:caffeine")
+    // 倒排索引的压缩位图
+    implementation("org.roaringbitmap:RoaringBitmap:0.9.49")
+
+    testImplementation("org.springframework.boot:spring-boot-starter-test")
 
     // You may add any utility library you want to use, such as guava.
     // ORM libraries are prohibited in this project.
 }
 
+tasks.test {
+    useJUnitPlatform()
+}
+
 tasks.withType<BootRun> {
     enabled = false
 }
@@ -0,0 +1,54 @@
+package io.sustc.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * Counters of one in-process cache since startup.
+ */
+@Builder
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheReport implements Serializable {
+
+    /**
+     * Name of the cache, e.g. {@code auth} or {@code search}.
+     */
+    private String name;
+
+    /**
+     * Whether the cache is used; a disabled cache reports no hits.
+     */
+    private boolean enabled;
+
+    private long hitCount;
+
+    private long missCount;
+
+    /**
+     * Hits divided by requests, 1 if there were no requests.
+     */
+    private double hitRate;
+
+    private long evictionCount;
+
+    /**
+     * Approximate number of entries currently cached.
+     */
+    private long size;
+
+    /**
+     * Hits that were also checked against the database, 0 for caches that do not sample.
+     */
+    private long verifiedReads;
+
+    /**
+     * Verified hits whose cached value differed from the database.
+     */
+    private long staleReads;
+}
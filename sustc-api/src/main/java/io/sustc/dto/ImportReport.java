@@ -0,0 +1,91 @@
+package io.sustc.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Where the time of one {@code importData} call went, phase by phase.
+ */
+@Builder
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportReport implements Serializable {
+
+    /**
+     * Wall time of the whole import, in milliseconds.
+     */
+    private long elapsedMillis;
+
+    /**
+     * Total rows loaded into all tables.
+     */
+    private long rows;
+
+    /**
+     * Total rows updated by the derived phases after loading, e.g. follow counts and rating totals.
+     * Not part of {@link #rows}, since these rows were already loaded.
+     */
+    private long recomputedRows;
+
+    /**
+     * Total bytes of {@code COPY} data sent to the server.
+     */
+    private long bytes;
+
+    /**
+     * Phases ordered by their start time.
+     */
+    private List<Phase> phases;
+
+    /**
+     * The exception that aborted the import, {@code null} if it completed.
+     */
+    private String failure;
+
+    @Builder
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Phase implements Serializable {
+
+        /**
+         * Name of the phase, e.g. the loaded table, {@code create tables} or an index name.
+         */
+        private String name;
+
+        /**
+         * Start of the phase, in milliseconds since the start of the import.
+         */
+        private long startMillis;
+
+        /**
+         * Wall time from the start of the first to the end of the last task of the phase, in milliseconds.
+         */
+        private long elapsedMillis;
+
+        /**
+         * Rows written by the phase, 0 for DDL phases.
+         */
+        private long rows;
+
+        /**
+         * Bytes of {@code COPY} data sent by the phase, 0 for upserts and DDL phases.
+         */
+        private long bytes;
+
+        private double rowsPerSecond;
+
+        private double bytesPerSecond;
+
+        /**
+         * Whether the phase recomputes columns of loaded rows instead of loading rows.
+         */
+        private boolean derived;
+    }
+}
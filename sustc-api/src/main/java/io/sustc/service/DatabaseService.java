@@ -1,9 +1,14 @@
 package io.sustc.service;
 
+import io.sustc.dto.CacheReport;
+import io.sustc.dto.ImportReport;
 import io.sustc.dto.ReviewRecord;
 import io.sustc.dto.UserRecord;
 import io.sustc.dto.RecipeRecord;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
 public interface DatabaseService {
@@ -18,6 +23,12 @@ public interface DatabaseService {
     /**
      * Imports data to an empty database.
      * Invalid data will not be provided.
+     * <p>
+     * The import is not one transaction: tables may be loaded in parallel chunks, each committed on its own.
+     * If it fails, an implementation should leave no half-loaded data behind where it can, e.g. by emptying
+     * the tables it started loading from empty, and report the failure in {@link #getLastImportReport()}.
+     * Rows already merged into non-empty tables, and checkpoints kept on purpose to resume a failed import,
+     * may remain.
      *
      * @param reviewRecords review records parsed from csv
      * @param userRecords  user records parsed from csv
@@ -29,6 +40,50 @@ public interface DatabaseService {
             List<RecipeRecord> recipeRecords
     );
 
+    /**
+     * Imports data to an empty database from chunked sources.
+     * <p>
+     * Each iterator yields the records of one kind in bounded-size chunks, so an implementation
+     * may load them without ever holding a whole dataset in memory.
+     * The default implementation collects all chunks and delegates to
+     * {@link #importData(List, List, List)}.
+     *
+     * @param reviewChunks review records, chunk by chunk
+     * @param userChunks   user records, chunk by chunk
+     * @param recipeChunks recipe records, chunk by chunk
+     */
+    default void importData(
+            Iterator<List<ReviewRecord>> reviewChunks,
+            Iterator<List<UserRecord>> userChunks,
+            Iterator<List<RecipeRecord>> recipeChunks
+    ) {
+        List<ReviewRecord> reviewRecords = new ArrayList<>();
+        reviewChunks.forEachRemaining(reviewRecords::addAll);
+        List<UserRecord> userRecords = new ArrayList<>();
+        userChunks.forEachRemaining(userRecords::addAll);
+        List<RecipeRecord> recipeRecords = new ArrayList<>();
+        recipeChunks.forEachRemaining(recipeRecords::addAll);
+        importData(reviewRecords, userRecords, recipeRecords);
+    }
+
+    /**
+     * Returns the phase-by-phase statistics of the last {@code importData} call.
+     *
+     * @return the report, or {@code null} if the implementation does not collect one
+     */
+    default ImportReport getLastImportReport() {
+        return null;
+    }
+
+    /**
+     * Returns the counters of the in-process caches, e.g. their hit rates.
+     *
+     * @return one report per cache, empty if the implementation has none
+     */
+    default List<CacheReport> getCacheReports() {
+        return Collections.emptyList();
+    }
+
     /**
      * Delete all tables in the database.
      * <p>
@@ -1,6 +1,7 @@
 package io.sustc.service;
 
 import io.sustc.dto.AuthInfo;
+import io.sustc.dto.CursorPage;
 import io.sustc.dto.PageResult;
 import io.sustc.dto.RecipeRecord;
 import org.springframework.lang.Nullable;
@@ -58,6 +59,8 @@ public interface RecipeService {
      *   <li>{@code "rating_desc"} — highest rating first</li>
      *   <li>{@code "date_desc"} — newest first</li>
      *   <li>{@code "calories_asc"} — lowest calories first</li>
+     *   <li>{@code "relevance"} — best full-text match of {@code keyword} first; also returns recipes
+     *       that only match after stemming (e.g. "baking" for "bake")</li>
      * </ul>
      *
      * <p>This method returns the <b>complete {@link RecipeRecord}</b> corresponding
@@ -81,6 +84,32 @@ public interface RecipeService {
             String sort
     );
 
+    /**
+     * Same search as {@link #searchRecipes}, paginated by cursor instead of page number:
+     * each page continues right after the last recipe of the previous one, so deep pages
+     * cost as much as the first. No total is computed.
+     *
+     * <p>All sort options of {@link #searchRecipes} are supported except {@code "relevance"}.
+     *
+     * @param keyword   fuzzy search term for name/description (nullable)
+     * @param category  category filter (nullable)
+     * @param minRating minimum rating filter (nullable)
+     * @param cursor    {@link CursorPage#getNextCursor()} of the previous page, {@code null} for the first page
+     * @param size      page size
+     * @param sort      sorting criteria (nullable), must be the one the cursor was issued for
+     * @return a {@link CursorPage} containing the recipes of this page
+     * @throws IllegalArgumentException if {@code size <= 0}, the sort is {@code "relevance"},
+     *                                  or the cursor is invalid
+     */
+    CursorPage<RecipeRecord> searchRecipesAfter(
+            String keyword,
+            String category,
+            Double minRating,
+            @Nullable String cursor,
+            int size,
+            String sort
+    );
+
     /**
      * Creates a new recipe authored by the authenticated user.
      *
@@ -1,9 +1,11 @@
 package io.sustc.service;
 
 import io.sustc.dto.AuthInfo;
+import io.sustc.dto.CursorPage;
 import io.sustc.dto.PageResult;
 import io.sustc.dto.RecipeRecord;
 import io.sustc.dto.ReviewRecord;
+import org.springframework.lang.Nullable;
 
 
 public interface ReviewService {
@@ -191,6 +193,19 @@ public interface ReviewService {
      */
     PageResult<ReviewRecord> listByRecipe(long recipeId, int page, int size, String sort);
 
+    /**
+     * Same listing as {@link #listByRecipe}, paginated by cursor instead of page number:
+     * each page continues right after the last review of the previous one. No total is computed.
+     *
+     * @param recipeId the ID of the recipe whose reviews are being listed
+     * @param cursor   {@link CursorPage#getNextCursor()} of the previous page, {@code null} for the first page
+     * @param size     the number of items per page
+     * @param sort     sorting option, must be the one the cursor was issued for
+     * @return a {@link CursorPage} containing the {@link ReviewRecord} entries of this page
+     * @throws IllegalArgumentException if {@code size <= 0} or the cursor is invalid
+     */
+    CursorPage<ReviewRecord> listByRecipeAfter(long recipeId, @Nullable String cursor, int size, String sort);
+
     /**
      * Recalculates and updates the {@code aggregated_rating} and {@code review_count}
      * fields for the specified recipe.
@@ -199,6 +199,21 @@ public interface UserService {
      */
     PageResult<FeedItem> feed(AuthInfo auth, int page, int size, @Nullable String category);
 
+    /**
+     * Same timeline as {@link #feed}, paginated by cursor instead of page number:
+     * each page continues right after the last recipe of the previous one. No total is computed.
+     *
+     * @param auth     authentication info
+     * @param cursor   {@link CursorPage#getNextCursor()} of the previous page, {@code null} for the first page
+     * @param size     Page size (1~200, adjusted like in {@link #feed})
+     * @param category Optional recipe category filter, null means no filtering
+     * @return the recipes of this page
+     *
+     * @throws SecurityException if the user identity in {@code auth} is invalid or inactive
+     * @throws IllegalArgumentException if the cursor is invalid
+     */
+    CursorPage<FeedItem> feedAfter(AuthInfo auth, @Nullable String cursor, int size, @Nullable String category);
+
 
     /**
      * Finds the active (non-deleted) user with the highest ratio of followers to followings.
@@ -0,0 +1,140 @@
+package io.sustc.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.sustc.dto.CacheReport;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * Credentials of recently seen users, keyed by AuthorId, used by {@code UserService#login}.
+ * <p>
+ * Only a SHA-256 hash of the password and the deleted flag are kept. Unknown ids are cached too, so repeated
+ * logins with a bad id do not reach the database either. Entries are dropped by {@link #invalidate(long)}
+ * whenever the user row changes and by {@link #invalidateAll()} after an import or drop.
+ */
+@Component
+@Slf4j
+public class AuthCache {
+
+    private static final Credential UNKNOWN = new Credential(null, true);
+
+    private static final class Credential {
+        private final byte[] passwordHash;
+        private final boolean deleted;
+
+        private Credential(byte[] passwordHash, boolean deleted) {
+            this.passwordHash = passwordHash;
+            this.deleted = deleted;
+        }
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private CacheConfig cacheConfig;
+
+    private Cache<Long, Credential> cache;
+
+    @PostConstruct
+    void init() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(cacheConfig.getAuthMaximumSize())
+                .expireAfterWrite(cacheConfig.getAuthExpireAfterWrite())
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns {@code authorId} if the user exists, is not deleted and {@code password} matches, otherwise -1.
+     * A {@code null} or empty password never matches, not even a user stored without password.
+     */
+    public long login(long authorId, String password) {
+        if (password == null || password.isEmpty()) {
+            return -1;
+        }
+        Credential credential = cacheConfig.isAuthEnabled()
+                ? cache.get(authorId, this::load)
+                : load(authorId);
+        if (credential.deleted || !MessageDigest.isEqual(credential.passwordHash, hash(password))) {
+            return -1;
+        }
+        return authorId;
+    }
+
+    /**
+     * Drops the cached credential of one user, now and again once the current transaction commits,
+     * so a concurrent login cannot put back the row as it was before the change.
+     */
+    public void invalidate(long authorId) {
+        cache.invalidate(authorId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    cache.invalidate(authorId);
+                }
+            });
+        }
+    }
+
+    public void invalidateAll() {
+        log.debug("Auth cache cleared, {}", cache.stats());
+        cache.invalidateAll();
+    }
+
+    /**
+     * Hit / miss / load counters since startup.
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public CacheReport report() {
+        CacheStats stats = cache.stats();
+        return CacheReport.builder()
+                .name("auth")
+                .enabled(cacheConfig.isAuthEnabled())
+                .hitCount(stats.hitCount())
+                .missCount(stats.missCount())
+                .hitRate(stats.hitRate())
+                .evictionCount(stats.evictionCount())
+                .size(cache.estimatedSize())
+                .build();
+    }
+
+    private Credential load(long authorId) {
+        List<Credential> rows = jdbcTemplate.query(
+                "SELECT Password, IsDeleted FROM users WHERE AuthorId = ?",
+                (rs, rowNum) -> new Credential(hash(rs.getString("Password")), rs.getBoolean("IsDeleted")),
+                authorId
+        );
+        return rows.isEmpty() ? UNKNOWN : rows.get(0);
+    }
+
+    /**
+     * @return {@code null} for a {@code NULL} password, which {@link MessageDigest#isEqual} never matches
+     */
+    private static byte[] hash(String password) {
+        if (password == null) {
+            return null;
+        }
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(password.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
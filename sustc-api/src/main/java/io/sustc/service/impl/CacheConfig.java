@@ -0,0 +1,52 @@
+package io.sustc.service.impl;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Settings of the in-process caches, bound from {@code sustc.cache.*}.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "sustc.cache")
+@Data
+public class CacheConfig {
+
+    /**
+     * Cache the credentials checked by {@code UserService#login} so that most calls skip the database.
+     */
+    private boolean authEnabled = true;
+
+    /**
+     * Maximum number of users kept in the credential cache.
+     */
+    private long authMaximumSize = 100_000;
+
+    /**
+     * How long a cached credential is trusted. Bounds how late changes made by other processes are seen.
+     */
+    private Duration authExpireAfterWrite = Duration.ofMinutes(10);
+
+    /**
+     * Cache the pages returned by {@code RecipeService#searchRecipes}, see {@link SearchCache}.
+     */
+    private boolean searchEnabled = false;
+
+    /**
+     * Approximate memory taken by the cached search pages before the least used ones are evicted.
+     */
+    private DataSize searchMaximumWeight = DataSize.ofMegabytes(64);
+
+    /**
+     * How long a cached search page is trusted. Bounds how late changes made by other processes are seen.
+     */
+    private Duration searchExpireAfterWrite = Duration.ofMinutes(1);
+
+    /**
+     * Fraction of search cache hits that are also run against the database to measure stale reads.
+     */
+    private double searchVerifyRate = 0.01;
+}
@@ -0,0 +1,156 @@
+package io.sustc.service.impl;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * Streams rows to PostgreSQL through {@code COPY ... FROM STDIN WITH (FORMAT csv)}.
+ * <p>
+ * Fields are encoded straight into a reusable byte buffer which is pushed to the
+ * server whenever it fills up, so no intermediate text of the whole table is built.
+ * Strings are always quoted, an unquoted empty field is sent for {@code null}.
+ */
+final class CopyWriter implements AutoCloseable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final CopyIn copyIn;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private int position;
+
+    private boolean rowStart = true;
+
+    private long rows;
+
+    private long bytes;
+
+    private final long startMillis = System.currentTimeMillis();
+
+    CopyWriter(Connection conn, String table, String... columns) throws SQLException {
+        this(conn.unwrap(PGConnection.class).getCopyAPI().copyIn(
+                "COPY " + table + " (" + String.join(", ", columns) + ") FROM STDIN WITH (FORMAT csv)"));
+    }
+
+    CopyWriter(CopyIn copyIn) {
+        this.copyIn = copyIn;
+    }
+
+    CopyWriter addLong(long value) throws SQLException {
+        separator();
+        writeAscii(Long.toString(value));
+        return this;
+    }
+
+    CopyWriter addInt(int value) throws SQLException {
+        separator();
+        writeAscii(Integer.toString(value));
+        return this;
+    }
+
+    CopyWriter addFloat(float value) throws SQLException {
+        separator();
+        writeAscii(Float.toString(value));
+        return this;
+    }
+
+    CopyWriter addTimestamp(Timestamp value) throws SQLException {
+        separator();
+        if (value != null) {
+            writeAscii(value.toString());
+        }
+        return this;
+    }
+
+    CopyWriter addString(String value) throws SQLException {
+        separator();
+        if (value == null) {
+            return this;
+        }
+        byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+        write((byte) '"');
+        for (byte b : encoded) {
+            if (b == '"') {
+                write((byte) '"');
+            }
+            write(b);
+        }
+        write((byte) '"');
+        return this;
+    }
+
+    CopyWriter addNull() throws SQLException {
+        separator();
+        return this;
+    }
+
+    void endRow() throws SQLException {
+        write((byte) '\n');
+        rowStart = true;
+        rows++;
+    }
+
+    /**
+     * Flushes the pending buffer and completes the COPY.
+     *
+     * @return number of rows the server reports as copied
+     */
+    long finish() throws SQLException {
+        flush();
+        return copyIn.endCopy();
+    }
+
+    long getRows() {
+        return rows;
+    }
+
+    long getBytes() {
+        return bytes + position;
+    }
+
+    long getStartMillis() {
+        return startMillis;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (copyIn.isActive()) {
+            copyIn.cancelCopy();
+        }
+    }
+
+    private void separator() throws SQLException {
+        if (rowStart) {
+            rowStart = false;
+        } else {
+            write((byte) ',');
+        }
+    }
+
+    private void writeAscii(String value) throws SQLException {
+        for (int i = 0; i < value.length(); i++) {
+            write((byte) value.charAt(i));
+        }
+    }
+
+    private void write(byte b) throws SQLException {
+        if (position == buffer.length) {
+            flush();
+        }
+        buffer[position++] = b;
+    }
+
+    private void flush() throws SQLException {
+        if (position > 0) {
+            copyIn.writeToCopy(buffer, 0, position);
+            bytes += position;
+            position = 0;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package io.sustc.service.impl;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Settings of {@link PageCounter}, bound from {@code sustc.count.*}.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "sustc.count")
+@Data
+public class CountConfig {
+
+    /**
+     * How {@code PageResult.total} is computed by the paginated listings.
+     */
+    private PageCounter.Mode mode = PageCounter.Mode.EXACT;
+
+    /**
+     * Maximum number of distinct filters whose count is kept in {@link PageCounter.Mode#CACHED} mode.
+     */
+    private long cacheMaximumSize = 10_000;
+
+    /**
+     * How long a cached count is trusted. Bounds how late writes made by other processes are seen.
+     */
+    private Duration cacheExpireAfterWrite = Duration.ofMinutes(5);
+
+    /**
+     * In {@link PageCounter.Mode#ESTIMATED} mode, planner estimates below this are replaced by an exact count,
+     * which is cheap for so few rows and avoids visibly wrong totals on small results.
+     */
+    private long estimateExactBelow = 10_000;
+}
@@ -1,18 +1,28 @@
 package io.sustc.service.impl;
 
+import io.sustc.dto.CacheReport;
+import io.sustc.dto.ImportReport;
 import io.sustc.dto.ReviewRecord;
 import io.sustc.dto.UserRecord;
 import io.sustc.dto.RecipeRecord;
 import io.sustc.service.DatabaseService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntToLongFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.Collectors;
 import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.ResultSet;
@@ -44,109 +54,950 @@ public class DatabaseServiceImpl implements DatabaseService {
         return Arrays.asList(12410631, 12210909);
     }
 
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ImportConfig importConfig;
+
+    @Autowired
+    private IdAllocator idAllocator;
+
+    @Autowired
+    private AuthCache authCache;
+
+    @Autowired
+    private LikeBuffer likeBuffer;
+
+    @Autowired
+    private SearchIndex searchIndex;
+
+    @Autowired
+    private PageCounter pageCounter;
+
+    @Autowired
+    private SearchCache searchCache;
+
+    private static final String STAGING_SCHEMA = "import_staging";
+
+    private static final String RETIRED_SCHEMA = "import_retired";
+
+    private final ImportMetrics importMetrics = new ImportMetrics();
+
+    private volatile ImportReport lastImportReport;
+
     @Override
-    @Transactional
     public void importData(
             List<ReviewRecord> reviewRecords,
             List<UserRecord> userRecords,
             List<RecipeRecord> recipeRecords) {
+        importMetrics.start();
+        // 失败时据此撤销：本次新建的表删除，本次从空表开始加载的表清空
+        boolean created = false;
+        boolean emptied = false;
         try {
-            createTables();
-            importUsers(userRecords);
-            importUserFollows(userRecords);
-            importRecipes(recipeRecords);
-            importRecipeIngredients(recipeRecords);
-            importReviews(reviewRecords);
-            importReviewLikes(reviewRecords);
+            if (importConfig.getCheckpointRows() > 0) {
+                importCheckpointed(reviewRecords, userRecords, recipeRecords);
+            } else if (importConfig.isStagingSwap()) {
+                importStaged(reviewRecords, userRecords, recipeRecords);
+            } else if (importConfig.isDeferConstraints() && !tablesExist()) {
+                created = true;
+                importDeferred(reviewRecords, userRecords, recipeRecords);
+            } else {
+                createTables();
+                if (isEmpty("users") && isEmpty("recipes") && isEmpty("reviews")) {
+                    emptied = true;
+                    importInParallel(reviewRecords, userRecords, recipeRecords);
+                } else {
+                    new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                            importInTransaction(reviewRecords, userRecords, recipeRecords));
+                }
+                createIndexes();
+            }
+            recomputeRatingTotals();
+            recomputeLikeCounts();
+            idAllocator.reseed();
+            authCache.invalidateAll();
+            likeBuffer.discard();
+            searchIndex.rebuildAsync();
+            pageCounter.invalidateAll();
+            searchCache.invalidateAll();
+        } catch (Exception e) {
+            System.err.println("导入数据时发生异常：" + e.getMessage());
+            e.printStackTrace();
+            importMetrics.fail(e);
+            if (created || emptied) {
+                discardFailedImport(created);
+            }
+            throw e;
+        } finally {
+            lastImportReport = importMetrics.report();
+        }
+    }
+
+    /**
+     * Streams the chunks into the database, users first, then recipes, then reviews, so that
+     * every chunk only references rows committed before it. Each chunk is loaded in its own
+     * transaction and dropped afterwards; only the packed follow edges are kept until all users are in.
+     */
+    @Override
+    public void importData(
+            Iterator<List<ReviewRecord>> reviewChunks,
+            Iterator<List<UserRecord>> userChunks,
+            Iterator<List<RecipeRecord>> recipeChunks) {
+        importMetrics.start();
+        boolean created = false;
+        boolean emptied = false;
+        try {
+            boolean deferred = importConfig.isDeferConstraints() && !tablesExist();
+            created = deferred;
+            if (deferred) {
+                createBareTables();
+            } else {
+                createTables();
+            }
+            boolean copyUsers = deferred || isEmpty("users");
+            boolean copyFollows = deferred || isEmpty("user_follows");
+            boolean copyRecipes = deferred || isEmpty("recipes");
+            boolean copyIngredients = deferred || isEmpty("recipe_ingredients");
+            boolean copyReviews = deferred || isEmpty("reviews");
+            boolean copyLikes = deferred || isEmpty("review_likes");
+            emptied = copyUsers && copyFollows && copyRecipes && copyIngredients && copyReviews && copyLikes;
+
+            long start = System.currentTimeMillis();
+            FollowEdgeSet edgeSet = new FollowEdgeSet(0);
+            while (userChunks.hasNext()) {
+                List<UserRecord> chunk = userChunks.next();
+                for (UserRecord user : chunk) {
+                    addFollowEdges(user, edgeSet);
+                }
+                inTransaction(conn -> {
+                    if (copyUsers) {
+                        copyUsers(conn, chunk, null);
+                    } else {
+                        importUsers(chunk, null);
+                    }
+                });
+            }
+            long[] edges = edgeSet.toSortedArray();
+            edgeSet = null;
+            for (int from = 0; from < edges.length; from += importConfig.getChunkSize()) {
+                int begin = from;
+                int end = Math.min(from + importConfig.getChunkSize(), edges.length);
+                inTransaction(conn -> {
+                    if (copyFollows) {
+                        copyFollowEdges(conn, edges, begin, end);
+                    } else {
+                        importUserFollows(Collections.emptyList(), Arrays.copyOfRange(edges, begin, end));
+                    }
+                });
+            }
+            if (importConfig.isRecomputeFollowCounts()) {
+                recomputeFollowCounts();
+            }
+            log.info("Import phase stream users: {} ms", System.currentTimeMillis() - start);
+
+            start = System.currentTimeMillis();
+            while (recipeChunks.hasNext()) {
+                List<RecipeRecord> chunk = recipeChunks.next();
+                inTransaction(conn -> {
+                    if (copyRecipes) {
+                        copyRecipes(conn, chunk);
+                    } else {
+                        importRecipes(chunk);
+                    }
+                    if (copyIngredients) {
+                        copyRecipeIngredients(conn, chunk);
+                    } else {
+                        importRecipeIngredients(chunk);
+                    }
+                });
+            }
+            log.info("Import phase stream recipes: {} ms", System.currentTimeMillis() - start);
+
+            start = System.currentTimeMillis();
+            while (reviewChunks.hasNext()) {
+                List<ReviewRecord> chunk = reviewChunks.next();
+                inTransaction(conn -> {
+                    if (copyReviews) {
+                        copyReviews(conn, chunk);
+                    } else {
+                        importReviews(chunk);
+                    }
+                    if (copyLikes) {
+                        copyReviewLikes(conn, chunk);
+                    } else {
+                        importReviewLikes(chunk);
+                    }
+                });
+            }
+            log.info("Import phase stream reviews: {} ms", System.currentTimeMillis() - start);
+
+            if (deferred) {
+                buildConstraints(null);
+            } else {
+                createIndexes();
+            }
+            recomputeRatingTotals();
+            recomputeLikeCounts();
+            idAllocator.reseed();
+            authCache.invalidateAll();
+            likeBuffer.discard();
+            searchIndex.rebuildAsync();
+            pageCounter.invalidateAll();
+            searchCache.invalidateAll();
         } catch (Exception e) {
             System.err.println("导入数据时发生异常：" + e.getMessage());
             e.printStackTrace();
+            importMetrics.fail(e);
+            if (created || emptied) {
+                discardFailedImport(created);
+            }
             throw e;
+        } finally {
+            lastImportReport = importMetrics.report();
+        }
+    }
+
+    /**
+     * Loads one table range through {@code COPY} if {@code bulk}, otherwise through the upserts.
+     */
+    private interface CheckpointTask {
+        void run(Connection conn, int from, int to, boolean bulk) throws SQLException;
+    }
+
+    /**
+     * Loads every table in ascending key order, committing every {@link ImportConfig#getCheckpointRows()} rows
+     * together with a checkpoint in {@code import_checkpoint}. After a failure, calling it again with the same
+     * records skips what was already committed and continues after the last checkpointed key.
+     */
+    private void importCheckpointed(
+            List<ReviewRecord> reviewRecords,
+            List<UserRecord> userRecords,
+            List<RecipeRecord> recipeRecords) {
+        createTables();
+        ImportCheckpoint.createTable(jdbcTemplate);
+        Map<String, ImportCheckpoint> checkpoints = ImportCheckpoint.load(jdbcTemplate);
+        if (!checkpoints.isEmpty()) {
+            log.info("Resuming import, checkpoints found for {}", checkpoints.keySet());
+        }
+
+        List<UserRecord> users = new ArrayList<>(userRecords);
+        users.sort(Comparator.comparingLong(UserRecord::getAuthorId));
+        long[] edges = collectFollowEdges(userRecords);
+        FollowEdgeSet.Counts counts = countFollows(edges, userRecords);
+        loadCheckpointed("users", checkpoints, users.size(), i -> users.get(i).getAuthorId(), i -> 1,
+                (conn, from, to, bulk) -> {
+                    if (bulk) {
+                        copyUsers(conn, users.subList(from, to), counts);
+                    } else {
+                        importUsers(users.subList(from, to), counts);
+                    }
+                });
+        if (edges != null) {
+            loadCheckpointed("user_follows", checkpoints, edges.length, i -> edges[i], i -> 1,
+                    (conn, from, to, bulk) -> {
+                        if (bulk) {
+                            copyFollowEdges(conn, edges, from, to);
+                        } else {
+                            importUserFollows(Collections.emptyList(), Arrays.copyOfRange(edges, from, to));
+                        }
+                    });
+        } else {
+            // 无法打包成单个键时，整张关注表作为一个检查点
+            loadCheckpointed("user_follows", checkpoints, 1, i -> 0L, i -> 1,
+                    (conn, from, to, bulk) -> {
+                        if (bulk) {
+                            copyUserFollows(conn, userRecords);
+                        } else {
+                            importUserFollows(userRecords, null);
+                        }
+                    });
+        }
+
+        List<RecipeRecord> recipes = new ArrayList<>(recipeRecords);
+        recipes.sort(Comparator.comparingLong(RecipeRecord::getRecipeId));
+        loadCheckpointed("recipes", checkpoints, recipes.size(), i -> recipes.get(i).getRecipeId(), i -> 1,
+                (conn, from, to, bulk) -> {
+                    if (bulk) {
+                        copyRecipes(conn, recipes.subList(from, to));
+                    } else {
+                        importRecipes(recipes.subList(from, to));
+                    }
+                });
+        loadCheckpointed("recipe_ingredients", checkpoints, recipes.size(), i -> recipes.get(i).getRecipeId(),
+                i -> recipes.get(i).getRecipeIngredientParts() != null ? recipes.get(i).getRecipeIngredientParts().length : 0,
+                (conn, from, to, bulk) -> {
+                    if (bulk) {
+                        copyRecipeIngredients(conn, recipes.subList(from, to));
+                    } else {
+                        importRecipeIngredients(recipes.subList(from, to));
+                    }
+                });
+
+        List<ReviewRecord> reviews = new ArrayList<>(reviewRecords);
+        reviews.sort(Comparator.comparingLong(ReviewRecord::getReviewId));
+        loadCheckpointed("reviews", checkpoints, reviews.size(), i -> reviews.get(i).getReviewId(), i -> 1,
+                (conn, from, to, bulk) -> {
+                    if (bulk) {
+                        copyReviews(conn, reviews.subList(from, to));
+                    } else {
+                        importReviews(reviews.subList(from, to));
+                    }
+                });
+        loadCheckpointed("review_likes", checkpoints, reviews.size(), i -> reviews.get(i).getReviewId(),
+                i -> reviews.get(i).getLikes() != null ? reviews.get(i).getLikes().length : 0,
+                (conn, from, to, bulk) -> {
+                    if (bulk) {
+                        copyReviewLikes(conn, reviews.subList(from, to));
+                    } else {
+                        importReviewLikes(reviews.subList(from, to));
+                    }
+                });
+
+        createIndexes();
+        ImportCheckpoint.clear(jdbcTemplate);
+    }
+
+    /**
+     * Loads the index range {@code [0, size)} of {@code table}, sorted by {@code key}, in chunks of about
+     * {@link ImportConfig#getCheckpointRows()} rows. Records sharing a key always end up in the same chunk,
+     * so the last key of a committed chunk is a safe resume point.
+     */
+    private void loadCheckpointed(String table, Map<String, ImportCheckpoint> checkpoints, int size,
+                                  IntToLongFunction key, IntUnaryOperator weight, CheckpointTask task) {
+        ImportCheckpoint checkpoint = checkpoints.get(table);
+        if (checkpoint != null && checkpoint.done) {
+            log.info("Import of {} already finished, {} rows", table, checkpoint.rows);
+            return;
+        }
+        boolean bulk = checkpoint != null ? checkpoint.bulk : isEmpty(table);
+        int from = 0;
+        long rows = 0;
+        if (checkpoint != null) {
+            while (from < size && key.applyAsLong(from) <= checkpoint.lastKey) {
+                from++;
+            }
+            rows = checkpoint.rows;
+            log.info("Resuming import of {} after key {}, {} rows already loaded", table, checkpoint.lastKey, rows);
+        }
+        long start = System.currentTimeMillis();
+        do {
+            int to = from;
+            long chunkRows = 0;
+            while (to < size && (chunkRows < importConfig.getCheckpointRows()
+                    || key.applyAsLong(to) == key.applyAsLong(to - 1))) {
+                chunkRows += weight.applyAsInt(to);
+                to++;
+            }
+            int begin = from;
+            int end = to;
+            long total = rows + chunkRows;
+            long lastKey = end > begin ? key.applyAsLong(end - 1)
+                    : checkpoint != null ? checkpoint.lastKey : Long.MIN_VALUE;
+            inTransaction(conn -> {
+                if (end > begin) {
+                    task.run(conn, begin, end, bulk);
+                }
+                ImportCheckpoint.save(conn, table, lastKey, total, bulk, end == size);
+            });
+            from = to;
+            rows = total;
+        } while (from < size);
+        log.info("Import of {} finished, {} rows in {} ms", table, rows, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Runs {@code task} in a transaction of its own, on the connection shared with {@link #jdbcTemplate}.
+     */
+    private void inTransaction(ImportScheduler.ConnectionTask task) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Connection conn = DataSourceUtils.getConnection(dataSource);
+            try {
+                task.run(conn);
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            } finally {
+                DataSourceUtils.releaseConnection(conn, dataSource);
+            }
+        });
+    }
+
+    /**
+     * Loads a fresh database following the foreign-key DAG:
+     * users -> (user_follows, recipes), recipes -> (recipe_ingredients, reviews), reviews -> review_likes.
+     * Every table is split into chunks committed independently on separate connections.
+     */
+    private void importInParallel(
+            List<ReviewRecord> reviewRecords,
+            List<UserRecord> userRecords,
+            List<RecipeRecord> recipeRecords) {
+        try (ImportScheduler scheduler = new ImportScheduler(dataSource, importMetrics,
+                importConfig.getParallelism(), importConfig.getChunkSize())) {
+            long[] edges = collectFollowEdges(userRecords);
+            FollowEdgeSet.Counts counts = countFollows(edges, userRecords);
+            CompletableFuture<Void> users = scheduler.submitChunked("users", userRecords,
+                    (conn, chunk) -> copyUsers(conn, chunk, counts));
+            submitUserFollows(scheduler, edges, userRecords, users);
+            CompletableFuture<Void> recipes = scheduler.submitChunked("recipes", recipeRecords, this::copyRecipes, users);
+            scheduler.submitChunked("recipe_ingredients", recipeRecords, this::copyRecipeIngredients, recipes);
+            CompletableFuture<Void> reviews = scheduler.submitChunked("reviews", reviewRecords, this::copyReviews, recipes);
+            scheduler.submitChunked("review_likes", reviewRecords, this::copyReviewLikes, reviews);
+            scheduler.awaitAll();
+        }
+    }
+
+    /**
+     * Loads bare tables without any key, check or index, then builds the primary keys,
+     * validates the foreign keys and checks and creates the secondary indexes in parallel.
+     * As nothing references anything during the load, all tables are loaded at once.
+     */
+    private void importDeferred(
+            List<ReviewRecord> reviewRecords,
+            List<UserRecord> userRecords,
+            List<RecipeRecord> recipeRecords) {
+        long start = System.currentTimeMillis();
+        createBareTables();
+        log.info("Import phase create tables: {} ms", System.currentTimeMillis() - start);
+
+        loadBareTables(null, reviewRecords, userRecords, recipeRecords);
+        buildConstraints(null);
+    }
+
+    /**
+     * Loads all tables at once into tables without constraints.
+     *
+     * @param schema the schema of the tables, {@code null} for the default one
+     */
+    private void loadBareTables(
+            String schema,
+            List<ReviewRecord> reviewRecords,
+            List<UserRecord> userRecords,
+            List<RecipeRecord> recipeRecords) {
+        long start = System.currentTimeMillis();
+        try (ImportScheduler scheduler = new ImportScheduler(dataSource, importMetrics,
+                importConfig.getParallelism(), importConfig.getChunkSize(), schema)) {
+            long[] edges = collectFollowEdges(userRecords);
+            FollowEdgeSet.Counts counts = countFollows(edges, userRecords);
+            scheduler.submitChunked("users", userRecords, (conn, chunk) -> copyUsers(conn, chunk, counts));
+            submitUserFollows(scheduler, edges, userRecords);
+            scheduler.submitChunked("recipes", recipeRecords, this::copyRecipes);
+            scheduler.submitChunked("recipe_ingredients", recipeRecords, this::copyRecipeIngredients);
+            scheduler.submitChunked("reviews", reviewRecords, this::copyReviews);
+            scheduler.submitChunked("review_likes", reviewRecords, this::copyReviewLikes);
+            scheduler.awaitAll();
+        }
+        log.info("Import phase load data: {} ms", System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Loads a complete new dataset next to the current one and swaps it in atomically.
+     * <ol>
+     *     <li>bare {@code UNLOGGED} tables are created and loaded in the {@value #STAGING_SCHEMA} schema,
+     *         then get their constraints and indexes, none of which is WAL-logged;</li>
+     *     <li>the tables are switched to {@code LOGGED}, parents before children since a logged table
+     *         cannot reference an unlogged one;</li>
+     *     <li>one short transaction moves the current tables out of {@code public}, moves the staged tables in
+     *         and drops the old ones, so readers see either the old or the new dataset.</li>
+     * </ol>
+     * Tables keep their names in the staging schema, so no constraint or index has to be renamed.
+     */
+    private void importStaged(
+            List<ReviewRecord> reviewRecords,
+            List<UserRecord> userRecords,
+            List<RecipeRecord> recipeRecords) {
+        long start = System.currentTimeMillis();
+        jdbcTemplate.execute("DROP SCHEMA IF EXISTS " + STAGING_SCHEMA + " CASCADE");
+        jdbcTemplate.execute("CREATE SCHEMA " + STAGING_SCHEMA);
+        inTransaction(conn -> {
+            execute(conn, "SET LOCAL search_path TO " + STAGING_SCHEMA);
+            for (ImportSchema.Table table : ImportSchema.TABLES) {
+                execute(conn, table.createSql("", false, true));
+            }
+        });
+        importMetrics.record("create tables", 0, start);
+        log.info("Import phase create tables: {} ms", System.currentTimeMillis() - start);
+
+        loadBareTables(STAGING_SCHEMA, reviewRecords, userRecords, recipeRecords);
+        buildConstraints(STAGING_SCHEMA);
+
+        start = System.currentTimeMillis();
+        try (ImportScheduler scheduler = new ImportScheduler(dataSource, importMetrics, importConfig.getParallelism(), 1, STAGING_SCHEMA)) {
+            Map<String, CompletableFuture<Void>> logged = new HashMap<>();
+            for (ImportSchema.Table table : ImportSchema.TABLES) {
+                CompletableFuture<?>[] parents = table.parents().stream().map(logged::get).toArray(CompletableFuture[]::new);
+                logged.put(table.name, scheduler.submit("set logged " + table.name,
+                        conn -> execute(conn, "ALTER TABLE " + table.name + " SET LOGGED"), parents));
+            }
+            scheduler.awaitAll();
+        }
+        log.info("Import phase set logged: {} ms", System.currentTimeMillis() - start);
+
+        start = System.currentTimeMillis();
+        Boolean hadViews = jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM pg_views " +
+                "WHERE schemaname = 'public' AND viewname = 'v_user_statistics')", Boolean.class);
+        inTransaction(conn -> {
+            execute(conn, "DROP SCHEMA IF EXISTS " + RETIRED_SCHEMA + " CASCADE");
+            execute(conn, "CREATE SCHEMA " + RETIRED_SCHEMA);
+            for (ImportSchema.Table table : ImportSchema.TABLES) {
+                execute(conn, "ALTER TABLE IF EXISTS public." + table.name + " SET SCHEMA " + RETIRED_SCHEMA);
+            }
+            for (ImportSchema.Table table : ImportSchema.TABLES) {
+                execute(conn, "ALTER TABLE " + STAGING_SCHEMA + "." + table.name + " SET SCHEMA public");
+            }
+            // 视图依赖旧表，随旧表一起删除后重建
+            execute(conn, "DROP SCHEMA " + RETIRED_SCHEMA + " CASCADE");
+            execute(conn, "DROP SCHEMA " + STAGING_SCHEMA);
+            if (hadViews != null && hadViews) {
+                createViews();
+            }
+        });
+        importMetrics.record("swap in", 0, start);
+        log.info("Import phase swap in: {} ms", System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Adds the deferred constraints and indexes to tables created by {@link #createBareTables()},
+     * in {@code schema} or in the default schema if it is {@code null}.
+     * <ol>
+     *     <li>primary keys, one task per table;</li>
+     *     <li>foreign keys and checks declared {@code NOT VALID}, which only touches the catalog;</li>
+     *     <li>{@code VALIDATE CONSTRAINT} per table, which only needs a {@code SHARE UPDATE EXCLUSIVE} lock;</li>
+     *     <li>the secondary indexes of a table once it is validated.</li>
+     * </ol>
+     * Each step waits for the one before it on the same table, because their locks conflict
+     * ({@code CREATE INDEX} takes {@code SHARE}, which the other steps cannot share), so no task
+     * is queued behind a lock another task of this build holds; different tables run in parallel.
+     */
+    private void buildConstraints(String schema) {
+        long start = System.currentTimeMillis();
+        try (ImportScheduler scheduler = new ImportScheduler(dataSource, importMetrics, importConfig.getParallelism(), 1, schema)) {
+            List<CompletableFuture<Void>> primaryKeys = new ArrayList<>();
+            for (ImportSchema.Table table : ImportSchema.TABLES) {
+                for (ImportSchema.Constraint c : table.constraints) {
+                    if (c.kind == ImportSchema.Kind.PRIMARY_KEY) {
+                        primaryKeys.add(scheduler.submit("primary key " + table.name,
+                                conn -> execute(conn, table.addConstraintSql(c, "", false))));
+                    }
+                }
+            }
+            CompletableFuture<Void> keys = CompletableFuture.allOf(primaryKeys.toArray(new CompletableFuture[0]))
+                    .thenRun(() -> log.info("Import phase primary keys: {} ms", System.currentTimeMillis() - start));
+
+            CompletableFuture<Void> declared = scheduler.submit("declare constraints", conn -> {
+                for (ImportSchema.Table table : ImportSchema.TABLES) {
+                    for (ImportSchema.Constraint c : table.constraints) {
+                        if (c.kind != ImportSchema.Kind.PRIMARY_KEY) {
+                            execute(conn, table.addConstraintSql(c, "", true));
+                        }
+                    }
+                }
+            }, keys);
+
+            Map<String, CompletableFuture<Void>> validations = new HashMap<>();
+            for (ImportSchema.Table table : ImportSchema.TABLES) {
+                validations.put(table.name, scheduler.submit("validate " + table.name, conn -> {
+                    for (ImportSchema.Constraint c : table.constraints) {
+                        if (c.kind != ImportSchema.Kind.PRIMARY_KEY) {
+                            execute(conn, table.validateConstraintSql(c, ""));
+                        }
+                    }
+                }, declared));
+            }
+            CompletableFuture.allOf(validations.values().toArray(new CompletableFuture[0]))
+                    .thenRun(() -> log.info("Import phase validate constraints: {} ms", System.currentTimeMillis() - start));
+
+            List<ImportSchema.Index> secondary = new ArrayList<>(ImportSchema.INDEXES);
+            secondary.addAll(trigramIndexes());
+            List<CompletableFuture<Void>> indexes = new ArrayList<>();
+            for (ImportSchema.Index index : secondary) {
+                indexes.add(scheduler.submit(index.name, conn -> execute(conn, index.createSql("")),
+                        validations.getOrDefault(index.table, declared)));
+            }
+            CompletableFuture.allOf(indexes.toArray(new CompletableFuture[0]))
+                    .thenRun(() -> log.info("Import phase secondary indexes: {} ms", System.currentTimeMillis() - start));
+
+            scheduler.awaitAll();
+        }
+        log.info("Import phase constraints and indexes: {} ms", System.currentTimeMillis() - start);
+    }
+
+    private static void execute(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    /**
+     * Single-transaction import used when some tables already contain data:
+     * empty tables are still bulk-loaded, the others go through the upsert statements.
+     */
+    private void importInTransaction(
+            List<ReviewRecord> reviewRecords,
+            List<UserRecord> userRecords,
+            List<RecipeRecord> recipeRecords) {
+        long[] edges = collectFollowEdges(userRecords);
+        FollowEdgeSet.Counts counts = countFollows(edges, userRecords);
+        Connection conn = DataSourceUtils.getConnection(dataSource);
+        try {
+            if (isEmpty("users")) {
+                copyUsers(conn, userRecords, counts);
+            } else {
+                importUsers(userRecords, counts);
+            }
+            if (isEmpty("user_follows")) {
+                if (edges != null) {
+                    copyFollowEdges(conn, edges, 0, edges.length);
+                } else {
+                    copyUserFollows(conn, userRecords);
+                }
+            } else {
+                importUserFollows(userRecords, edges);
+            }
+            if (isEmpty("recipes")) {
+                copyRecipes(conn, recipeRecords);
+            } else {
+                importRecipes(recipeRecords);
+            }
+            if (isEmpty("recipe_ingredients")) {
+                copyRecipeIngredients(conn, recipeRecords);
+            } else {
+                importRecipeIngredients(recipeRecords);
+            }
+            if (isEmpty("reviews")) {
+                copyReviews(conn, reviewRecords);
+            } else {
+                importReviews(reviewRecords);
+            }
+            if (isEmpty("review_likes")) {
+                copyReviewLikes(conn, reviewRecords);
+            } else {
+                importReviewLikes(reviewRecords);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            DataSourceUtils.releaseConnection(conn, dataSource);
         }
     }
 
     private void createTables() {
-        String[] createTableSQLs = {
-                "CREATE TABLE IF NOT EXISTS users (" +
-                        "    AuthorId BIGINT PRIMARY KEY, " +
-                        "    AuthorName VARCHAR(255) NOT NULL, " +
-                        "    Gender VARCHAR(10) CHECK (Gender IN ('Male', 'Female')), " +
-                        "    Age INTEGER CHECK (Age > 0), " +
-                        "    Followers INTEGER DEFAULT 0 CHECK (Followers >= 0), " +
-                        "    Following INTEGER DEFAULT 0 CHECK (Following >= 0), " +
-                        "    Password VARCHAR(255), " +
-                        "    IsDeleted BOOLEAN DEFAULT FALSE" +
-                        ")",
-
-                "CREATE TABLE IF NOT EXISTS recipes (" +
-                        "    RecipeId BIGINT PRIMARY KEY, " +
-                        "    Name VARCHAR(500) NOT NULL, " +
-                        "    AuthorId BIGINT NOT NULL, " +
-                        "    CookTime VARCHAR(50), " +
-                        "    PrepTime VARCHAR(50), " +
-                        "    TotalTime VARCHAR(50), " +
-                        "    DatePublished TIMESTAMP, " +
-                        "    Description TEXT, " +
-                        "    RecipeCategory VARCHAR(255), " +
-                        "    AggregatedRating FLOAT CHECK (AggregatedRating >= 0 AND AggregatedRating <= 5), " +
-                        "    ReviewCount INTEGER DEFAULT 0 CHECK (ReviewCount >= 0), " +
-                        "    Calories DECIMAL(10,2), " +
-                        "    FatContent DECIMAL(10,2), " +
-                        "    SaturatedFatContent DECIMAL(10,2), " +
-                        "    CholesterolContent DECIMAL(10,2), " +
-                        "    SodiumContent DECIMAL(10,2), " +
-                        "    CarbohydrateContent DECIMAL(10,2), " +
-                        "    FiberContent DECIMAL(10,2), " +
-                        "    SugarContent DECIMAL(10,2), " +
-                        "    ProteinContent DECIMAL(10,2), " +
-                        "    RecipeServings INTEGER, " +
-                        "    RecipeYield VARCHAR(100), " +
-                        "    FOREIGN KEY (AuthorId) REFERENCES users(AuthorId)" +
-                        ")",
-
-                "CREATE TABLE IF NOT EXISTS reviews (" +
-                        "    ReviewId BIGINT PRIMARY KEY , " +
-                        "    RecipeId BIGINT NOT NULL, " +
-                        "    AuthorId BIGINT NOT NULL, " +
-                        "    Rating INTEGER, " +
-                        "    Review TEXT, " +
-                        "    DateSubmitted TIMESTAMP, " +
-                        "    DateModified TIMESTAMP, " +
-                        "    FOREIGN KEY (RecipeId) REFERENCES recipes(RecipeId), " +
-                        "    FOREIGN KEY (AuthorId) REFERENCES users(AuthorId)" +
-                        ")",
-
-                "CREATE TABLE IF NOT EXISTS recipe_ingredients (" +
-                        "    RecipeId BIGINT, " +
-                        "    IngredientPart VARCHAR(500), " +
-                        "    PRIMARY KEY (RecipeId, IngredientPart), " +
-                        "    FOREIGN KEY (RecipeId) REFERENCES recipes(RecipeId)" +
-                        ")",
-
-                "CREATE TABLE IF NOT EXISTS review_likes (" +
-                        "    ReviewId BIGINT, " +
-                        "    AuthorId BIGINT, " +
-                        "    PRIMARY KEY (ReviewId, AuthorId), " +
-                        "    FOREIGN KEY (ReviewId) REFERENCES reviews(ReviewId), " +
-                        "    FOREIGN KEY (AuthorId) REFERENCES users(AuthorId)" +
-                        ")",
-
-                "CREATE TABLE IF NOT EXISTS user_follows (" +
-                        "    FollowerId BIGINT, " +
-                        "    FollowingId BIGINT, " +
-                        "    PRIMARY KEY (FollowerId, FollowingId), " +
-                        "    FOREIGN KEY (FollowerId) REFERENCES users(AuthorId), " +
-                        "    FOREIGN KEY (FollowingId) REFERENCES users(AuthorId), " +
-                        "    CHECK (FollowerId != FollowingId)" +
-                        ")"
-        };
-        for (String sql : createTableSQLs) {
-            jdbcTemplate.execute(sql);
-        }
-//        createIndexAndView();
-    }
-
-    private void importUsers(List<UserRecord> userRecords) {
+        long start = System.currentTimeMillis();
+        for (ImportSchema.Table table : ImportSchema.TABLES) {
+            jdbcTemplate.execute(table.createSql("", true));
+            jdbcTemplate.execute(table.addMissingColumnsSql(""));
+        }
+        importMetrics.record("create tables", 0, start);
+    }
+
+    private void createBareTables() {
+        long start = System.currentTimeMillis();
+        for (ImportSchema.Table table : ImportSchema.TABLES) {
+            jdbcTemplate.execute(table.createSql("", false));
+        }
+        importMetrics.record("create tables", 0, start);
+    }
+
+    /**
+     * Undoes a failed import that started from an empty database, so no half-loaded tables are left behind:
+     * tables created by the import are dropped, tables that were empty are truncated.
+     */
+    private void discardFailedImport(boolean created) {
+        String tables = ImportSchema.TABLES.stream().map(t -> t.name).collect(Collectors.joining(", "));
+        try {
+            jdbcTemplate.execute((created ? "DROP TABLE IF EXISTS " : "TRUNCATE ") + tables + " CASCADE");
+            idAllocator.reset();
+            log.warn("Import failed, {} {}", created ? "dropped" : "truncated", tables);
+        } catch (DataAccessException e) {
+            log.warn("Import failed and its tables could not be cleaned up", e);
+        }
+    }
+
+    private boolean tablesExist() {
+        Boolean exists = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM pg_tables WHERE schemaname = 'public' AND tablename IN ("
+                        + ImportSchema.tableNames("") + "))",
+                Boolean.class);
+        return exists != null && exists;
+    }
+
+    private boolean isEmpty(String table) {
+        Boolean exists = jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM " + table + ")", Boolean.class);
+        return exists == null || !exists;
+    }
+
+    /**
+     * Collects every follow edge once, whichever side of the relation listed it.
+     *
+     * @return the de-duplicated packed edges, or {@code null} if some user id cannot be packed
+     */
+    private long[] collectFollowEdges(List<UserRecord> userRecords) {
+        int expected = 0;
+        for (UserRecord user : userRecords) {
+            expected += user.getFollowingUsers() != null ? user.getFollowingUsers().length : 0;
+        }
+        FollowEdgeSet edges = new FollowEdgeSet(expected);
+        try {
+            for (UserRecord user : userRecords) {
+                addFollowEdges(user, edges);
+            }
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return edges.toSortedArray();
+    }
+
+    /**
+     * Adds the follow edges of one user.
+     *
+     * @throws IllegalArgumentException if an id of an edge cannot be packed
+     */
+    private static void addFollowEdges(UserRecord user, FollowEdgeSet edges) {
+        long currentUserId = user.getAuthorId();
+        if (user.getFollowingUsers() != null) {
+            for (long followedId : user.getFollowingUsers()) {
+                if (followedId != currentUserId) {
+                    edges.add(packable(currentUserId), packable(followedId));
+                }
+            }
+        }
+        if (user.getFollowerUsers() != null) {
+            for (long followerId : user.getFollowerUsers()) {
+                if (followerId != currentUserId) {
+                    edges.add(packable(followerId), packable(currentUserId));
+                }
+            }
+        }
+    }
+
+    private static long packable(long userId) {
+        if (!FollowEdgeSet.fits(userId)) {
+            throw new IllegalArgumentException("User id " + userId + " is outside [0, 2^32), cannot stream follow edges");
+        }
+        return userId;
+    }
+
+    /**
+     * Sets the follower / following counts of every user from the rows of {@code user_follows}.
+     */
+    private void recomputeFollowCounts() {
+        long start = System.currentTimeMillis();
+        int updated = jdbcTemplate.update("WITH c AS (" +
+                "SELECT AuthorId, SUM(Followers)::int AS Followers, SUM(Following)::int AS Following FROM (" +
+                "SELECT FollowingId AS AuthorId, 1 AS Followers, 0 AS Following FROM user_follows " +
+                "UNION ALL SELECT FollowerId, 0, 1 FROM user_follows) e GROUP BY AuthorId) " +
+                "UPDATE users u SET Followers = COALESCE(c.Followers, 0), Following = COALESCE(c.Following, 0) " +
+                "FROM users x LEFT JOIN c ON c.AuthorId = x.AuthorId " +
+                "WHERE u.AuthorId = x.AuthorId " +
+                "AND (u.Followers, u.Following) IS DISTINCT FROM (COALESCE(c.Followers, 0), COALESCE(c.Following, 0))");
+        importMetrics.recordDerived("follow counts", updated, start);
+    }
+
+    /**
+     * Fills the running RatingSum / RatingCount of every recipe from the loaded reviews,
+     * which {@code ReviewService} then keeps up to date incrementally.
+     */
+    private void recomputeRatingTotals() {
+        long start = System.currentTimeMillis();
+        int updated = jdbcTemplate.update("WITH t AS (" +
+                "SELECT RecipeId, SUM(Rating) AS RatingSum, COUNT(*)::int AS RatingCount FROM reviews GROUP BY RecipeId) " +
+                "UPDATE recipes r SET RatingSum = COALESCE(t.RatingSum, 0), RatingCount = COALESCE(t.RatingCount, 0) " +
+                "FROM recipes x LEFT JOIN t ON t.RecipeId = x.RecipeId " +
+                "WHERE r.RecipeId = x.RecipeId " +
+                "AND (r.RatingSum, r.RatingCount) IS DISTINCT FROM (COALESCE(t.RatingSum, 0), COALESCE(t.RatingCount, 0))");
+        importMetrics.recordDerived("rating totals", updated, start);
+    }
+
+    /**
+     * Fills the LikeCount of every review from the loaded likes.
+     */
+    private void recomputeLikeCounts() {
+        long start = System.currentTimeMillis();
+        int updated = jdbcTemplate.update("WITH t AS (" +
+                "SELECT ReviewId, COUNT(*)::int AS LikeCount FROM review_likes GROUP BY ReviewId) " +
+                "UPDATE reviews r SET LikeCount = COALESCE(t.LikeCount, 0) " +
+                "FROM reviews x LEFT JOIN t ON t.ReviewId = x.ReviewId " +
+                "WHERE r.ReviewId = x.ReviewId AND r.LikeCount IS DISTINCT FROM COALESCE(t.LikeCount, 0)");
+        importMetrics.recordDerived("like counts", updated, start);
+    }
+
+    private FollowEdgeSet.Counts countFollows(long[] edges, List<UserRecord> userRecords) {
+        if (edges == null || !importConfig.isRecomputeFollowCounts()) {
+            return null;
+        }
+        long[] userIds = new long[userRecords.size()];
+        for (int i = 0; i < userIds.length; i++) {
+            userIds[i] = userRecords.get(i).getAuthorId();
+        }
+        return new FollowEdgeSet.Counts(edges, userIds);
+    }
+
+    private void submitUserFollows(ImportScheduler scheduler, long[] edges, List<UserRecord> userRecords,
+                                   CompletableFuture<?>... dependencies) {
+        if (edges != null) {
+            scheduler.submitRanges("user_follows", edges.length,
+                    (conn, from, to) -> copyFollowEdges(conn, edges, from, to), dependencies);
+        } else {
+            scheduler.submit("user_follows", conn -> copyUserFollows(conn, userRecords), dependencies);
+        }
+    }
+
+    // 空表走 COPY 批量导入，非空表仍使用下面的 upsert 路径
+    private void copyUsers(Connection conn, List<UserRecord> userRecords, FollowEdgeSet.Counts counts)
+            throws SQLException {
+        try (CopyWriter writer = new CopyWriter(conn, "users",
+                "AuthorId", "AuthorName", "Gender", "Age", "Followers", "Following", "Password")) {
+            for (UserRecord user : userRecords) {
+                writer.addLong(user.getAuthorId())
+                        .addString(user.getAuthorName())
+                        .addString(user.getGender())
+                        .addInt(user.getAge())
+                        .addInt(counts != null ? counts.followers(user.getAuthorId(), user.getFollowers()) : user.getFollowers())
+                        .addInt(counts != null ? counts.following(user.getAuthorId(), user.getFollowing()) : user.getFollowing())
+                        .addString(user.getPassword())
+                        .endRow();
+            }
+            writer.finish();
+            importMetrics.record("users", writer);
+        }
+    }
+
+    private void copyFollowEdges(Connection conn, long[] edges, int from, int to) throws SQLException {
+        try (CopyWriter writer = new CopyWriter(conn, "user_follows", "FollowerId", "FollowingId")) {
+            for (int i = from; i < to; i++) {
+                writer.addLong(FollowEdgeSet.follower(edges[i])).addLong(FollowEdgeSet.following(edges[i])).endRow();
+            }
+            writer.finish();
+            importMetrics.record("user_follows", writer);
+        }
+    }
+
+    private void copyUserFollows(Connection conn, List<UserRecord> userRecords) throws SQLException {
+        // id 超出 32 位无法打包时的兜底：先 COPY 到临时表再在数据库中去重
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TEMP TABLE user_follows_load (FollowerId BIGINT, FollowingId BIGINT) ON COMMIT DROP");
+        }
+        try (CopyWriter writer = new CopyWriter(conn, "user_follows_load", "FollowerId", "FollowingId")) {
+            for (UserRecord user : userRecords) {
+                long currentUserId = user.getAuthorId();
+                if (user.getFollowingUsers() != null) {
+                    for (long followedId : user.getFollowingUsers()) {
+                        if (followedId != currentUserId) {
+                            writer.addLong(currentUserId).addLong(followedId).endRow();
+                        }
+                    }
+                }
+                if (user.getFollowerUsers() != null) {
+                    for (long followerId : user.getFollowerUsers()) {
+                        if (followerId != currentUserId) {
+                            writer.addLong(followerId).addLong(currentUserId).endRow();
+                        }
+                    }
+                }
+            }
+            writer.finish();
+            importMetrics.record("user_follows", writer);
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("INSERT INTO user_follows (FollowerId, FollowingId) " +
+                    "SELECT DISTINCT FollowerId, FollowingId FROM user_follows_load");
+            stmt.execute("DROP TABLE user_follows_load");
+        }
+    }
+
+    private void copyRecipes(Connection conn, List<RecipeRecord> recipeRecords) throws SQLException {
+        try (CopyWriter writer = new CopyWriter(conn, "recipes",
+                "RecipeId", "Name", "AuthorId", "CookTime", "PrepTime", "TotalTime",
+                "DatePublished", "Description", "RecipeCategory", "AggregatedRating", "ReviewCount",
+                "Calories", "FatContent", "SaturatedFatContent", "CholesterolContent", "SodiumContent",
+                "CarbohydrateContent", "FiberContent", "SugarContent", "ProteinContent", "RecipeServings", "RecipeYield")) {
+            for (RecipeRecord recipe : recipeRecords) {
+                writer.addLong(recipe.getRecipeId())
+                        .addString(recipe.getName())
+                        .addLong(recipe.getAuthorId())
+                        .addString(recipe.getCookTime())
+                        .addString(recipe.getPrepTime())
+                        .addString(recipe.getTotalTime())
+                        .addTimestamp(recipe.getDatePublished())
+                        .addString(recipe.getDescription())
+                        .addString(recipe.getRecipeCategory())
+                        .addFloat(recipe.getAggregatedRating())
+                        .addInt(recipe.getReviewCount())
+                        .addFloat(recipe.getCalories())
+                        .addFloat(recipe.getFatContent())
+                        .addFloat(recipe.getSaturatedFatContent())
+                        .addFloat(recipe.getCholesterolContent())
+                        .addFloat(recipe.getSodiumContent())
+                        .addFloat(recipe.getCarbohydrateContent())
+                        .addFloat(recipe.getFiberContent())
+                        .addFloat(recipe.getSugarContent())
+                        .addFloat(recipe.getProteinContent())
+                        .addInt(recipe.getRecipeServings())
+                        .addString(recipe.getRecipeYield())
+                        .endRow();
+            }
+            writer.finish();
+            importMetrics.record("recipes", writer);
+        }
+    }
+
+    private void copyRecipeIngredients(Connection conn, List<RecipeRecord> recipeRecords) throws SQLException {
+        try (CopyWriter writer = new CopyWriter(conn, "recipe_ingredients", "RecipeId", "IngredientPart")) {
+            for (RecipeRecord recipe : recipeRecords) {
+                String[] ingredientParts = recipe.getRecipeIngredientParts();
+                if (ingredientParts == null) {
+                    continue;
+                }
+                // 同一食谱中可能出现重复的成分，主键不允许重复
+                for (String part : new LinkedHashSet<>(Arrays.asList(ingredientParts))) {
+                    writer.addLong(recipe.getRecipeId()).addString(part).endRow();
+                }
+            }
+            writer.finish();
+            importMetrics.record("recipe_ingredients", writer);
+        }
+    }
+
+    private void copyReviews(Connection conn, List<ReviewRecord> reviewRecords) throws SQLException {
+        try (CopyWriter writer = new CopyWriter(conn, "reviews",
+                "ReviewId", "RecipeId", "AuthorId", "Rating", "Review", "DateSubmitted", "DateModified")) {
+            for (ReviewRecord review : reviewRecords) {
+                writer.addLong(review.getReviewId())
+                        .addLong(review.getRecipeId())
+                        .addLong(review.getAuthorId())
+                        .addInt(Math.round(review.getRating()))
+                        .addString(review.getReview())
+                        .addTimestamp(review.getDateSubmitted())
+                        .addTimestamp(review.getDateModified())
+                        .endRow();
+            }
+            writer.finish();
+            importMetrics.record("reviews", writer);
+        }
+    }
+
+    private void copyReviewLikes(Connection conn, List<ReviewRecord> reviewRecords) throws SQLException {
+        try (CopyWriter writer = new CopyWriter(conn, "review_likes", "ReviewId", "AuthorId")) {
+            for (ReviewRecord review : reviewRecords) {
+                long[] likes = review.getLikes();
+                if (likes == null || likes.length == 0) {
+                    continue;
+                }
+                long[] sorted = likes.clone();
+                Arrays.sort(sorted);
+                for (int i = 0; i < sorted.length; i++) {
+                    if (i == 0 || sorted[i] != sorted[i - 1]) {
+                        writer.addLong(review.getReviewId()).addLong(sorted[i]).endRow();
+                    }
+                }
+            }
+            writer.finish();
+            importMetrics.record("review_likes", writer);
+        }
+    }
+
+    private void importUsers(List<UserRecord> userRecords, FollowEdgeSet.Counts counts) {
+        long start = System.currentTimeMillis();
         String sql = "INSERT INTO users (AuthorId, AuthorName, Gender, Age, Followers, Following, Password) " +
                 "VALUES (?, ?, ?, ?, ?, ?, ?) ON CONFLICT (AuthorId) DO UPDATE " +
                 "SET AuthorName=EXCLUDED.AuthorName, Gender=EXCLUDED.Gender, Age=EXCLUDED.Age, " +
@@ -160,8 +1011,8 @@ public class DatabaseServiceImpl implements DatabaseService {
                 ps.setString(2, user.getAuthorName());
                 ps.setString(3, user.getGender());
                 ps.setInt(4, user.getAge());
-                ps.setInt(5, user.getFollowers());
-                ps.setInt(6, user.getFollowing());
+                ps.setInt(5, counts != null ? counts.followers(user.getAuthorId(), user.getFollowers()) : user.getFollowers());
+                ps.setInt(6, counts != null ? counts.following(user.getAuthorId(), user.getFollowing()) : user.getFollowing());
                 ps.setString(7, user.getPassword());
             }
 
@@ -170,9 +1021,11 @@ public class DatabaseServiceImpl implements DatabaseService {
                 return userRecords.size();
             }
         });
+        importMetrics.record("users", userRecords.size(), start);
     }
 
     private void importRecipes(List<RecipeRecord> recipeRecords) {
+        long start = System.currentTimeMillis();
         String sql = "INSERT INTO recipes (RecipeId, Name, AuthorId, CookTime, PrepTime, TotalTime, " +
                 "DatePublished, Description, RecipeCategory, AggregatedRating, ReviewCount, " +
                 "Calories, FatContent, SaturatedFatContent, CholesterolContent, SodiumContent, " +
@@ -222,35 +1075,31 @@ public class DatabaseServiceImpl implements DatabaseService {
                 return recipeRecords.size();
             }
         });
+        importMetrics.record("recipes", recipeRecords.size(), start);
     }
 
     private void importRecipeIngredients(List<RecipeRecord> recipeRecords) {
+        long start = System.currentTimeMillis();
         String sql = "INSERT INTO recipe_ingredients (RecipeId, IngredientPart) " +
                 "VALUES (?, ?) ON CONFLICT (RecipeId, IngredientPart) DO NOTHING";
 
+        StreamingBatchWriter writer = StreamingBatchWriter.ofStrings(jdbcTemplate, sql, importConfig.getBatchSize());
         for (RecipeRecord recipe : recipeRecords) {
             // 使用 getRecipeIngredientParts() 而不是 getIngredients()
             String[] ingredientParts = recipe.getRecipeIngredientParts();
-            if (ingredientParts == null || ingredientParts.length == 0) {
+            if (ingredientParts == null) {
                 continue;
             }
-
-            jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
-                @Override
-                public void setValues(PreparedStatement ps, int i) throws SQLException {
-                    ps.setLong(1, recipe.getRecipeId());
-                    ps.setString(2, ingredientParts[i]);  // 正确的方法名
-                }
-
-                @Override
-                public int getBatchSize() {
-                    return ingredientParts.length;  // 正确的方法名
-                }
-            });
+            for (String part : ingredientParts) {
+                writer.add(recipe.getRecipeId(), part);
+            }
         }
+        writer.flush();
+        importMetrics.record("recipe_ingredients", writer.getRows(), start);
     }
 
     private void importReviews(List<ReviewRecord> reviewRecords) {
+        long start = System.currentTimeMillis();
         String sql = "INSERT INTO reviews (ReviewId, RecipeId, AuthorId, Rating, Review, DateSubmitted, DateModified) " +
                 "VALUES (?, ?, ?, ?, ?, ?, ?) ON CONFLICT (ReviewId) DO UPDATE SET " +
                 "RecipeId=EXCLUDED.RecipeId, AuthorId=EXCLUDED.AuthorId, Rating=EXCLUDED.Rating, " +
@@ -274,77 +1123,71 @@ public class DatabaseServiceImpl implements DatabaseService {
                 return reviewRecords.size();
             }
         });
+        importMetrics.record("reviews", reviewRecords.size(), start);
     }
 
     private void importReviewLikes(List<ReviewRecord> reviewRecords) {
+        long start = System.currentTimeMillis();
         String sql = "INSERT INTO review_likes (ReviewId, AuthorId) " +
                 "VALUES (?, ?) ON CONFLICT (ReviewId, AuthorId) DO NOTHING";
 
+        StreamingBatchWriter writer = StreamingBatchWriter.ofLongs(jdbcTemplate, sql, importConfig.getBatchSize());
         for (ReviewRecord review : reviewRecords) {
-            long reviewId = review.getReviewId();
-            List<Long> likeAuthorIds = review.getLikeUsers();
-            if (likeAuthorIds == null || likeAuthorIds.size() == 0) {
+            long[] likes = review.getLikes();
+            if (likes == null) {
                 continue;
             }
-            jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
-                @Override
-                public void setValues(PreparedStatement ps, int i) throws SQLException {
-                    ps.setLong(1, reviewId); // 评论ID
-                    ps.setLong(2, likeAuthorIds.get(i)); // 点赞用户的ID
-                }
-
-                @Override
-                public int getBatchSize() {
-                    return likeAuthorIds.size();
-                }
-            });
+            for (long authorId : likes) {
+                writer.add(review.getReviewId(), authorId); // 评论ID, 点赞用户的ID
+            }
         }
+        writer.flush();
+        importMetrics.record("review_likes", writer.getRows(), start);
     }
 
-    private void importUserFollows(List<UserRecord> userRecords) {
+    private void importUserFollows(List<UserRecord> userRecords, long[] edges) {
+        long start = System.currentTimeMillis();
         String sql = "INSERT INTO user_follows (FollowerId, FollowingId) " +
                 "VALUES (?, ?) ON CONFLICT (FollowerId, FollowingId) DO NOTHING";
 
+        StreamingBatchWriter writer = StreamingBatchWriter.ofLongs(jdbcTemplate, sql, importConfig.getBatchSize());
+        if (edges != null) {
+            for (long edge : edges) {
+                writer.add(FollowEdgeSet.follower(edge), FollowEdgeSet.following(edge));
+            }
+            writer.flush();
+            importMetrics.record("user_follows", writer.getRows(), start);
+            return;
+        }
         for (UserRecord user : userRecords) {
             long currentUserId = user.getAuthorId();
-            long[] followerUsers = user.getFollowerUsers();
-            long[] followingUsers = user.getFollowingUsers();
-
-            List<long[]> allRelations = new ArrayList<>();
-
-            if (followingUsers != null && followingUsers.length > 0) {
-                for (long followedId : followingUsers) {
+            if (user.getFollowingUsers() != null) {
+                for (long followedId : user.getFollowingUsers()) {
                     if (currentUserId != followedId) {
-                        allRelations.add(new long[]{currentUserId, followedId});
+                        writer.add(currentUserId, followedId);
                     }
                 }
             }
-            if (followerUsers != null && followerUsers.length > 0) {
-                for (long followerId : followerUsers) {
+            if (user.getFollowerUsers() != null) {
+                for (long followerId : user.getFollowerUsers()) {
                     if (followerId != currentUserId) {
-                        allRelations.add(new long[]{followerId, currentUserId});
+                        writer.add(followerId, currentUserId);
                     }
                 }
             }
+        }
+        writer.flush();
+        importMetrics.record("user_follows", writer.getRows(), start);
+    }
 
-            if (allRelations.isEmpty()) {
-                continue;
-            }
-
-            jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
-                @Override
-                public void setValues(PreparedStatement ps, int i) throws SQLException {
-                    long[] relation = allRelations.get(i);
-                    ps.setLong(1, relation[0]);
-                    ps.setLong(2, relation[1]);
-                }
+    @Override
+    public ImportReport getLastImportReport() {
+        return lastImportReport;
+    }
 
-                @Override
-                public int getBatchSize() {
-                    return allRelations.size();
-                }
-            });
-        }
+    @Override
+    public List<CacheReport> getCacheReports() {
+        return Arrays.asList(authCache.report(), searchCache.report());
     }
 
     @Override
@@ -355,11 +1198,19 @@ public class DatabaseServiceImpl implements DatabaseService {
                 "        SELECT tablename\n" +
                 "        FROM pg_tables\n" +
                 "        WHERE schemaname = 'public';\n" +
+                "    sequences CURSOR FOR\n" +
+                "        SELECT sequencename\n" +
+                "        FROM pg_sequences\n" +
+                "        WHERE schemaname = 'public';\n" +
                 "BEGIN\n" +
                 "    FOR t IN tables\n" +
                 "    LOOP\n" +
                 "        EXECUTE 'DROP TABLE IF EXISTS ' || QUOTE_IDENT(t.tablename) || ' CASCADE;';\n" +
                 "    END LOOP;\n" +
+                "    FOR s IN sequences\n" +
+                "    LOOP\n" +
+                "        EXECUTE 'DROP SEQUENCE IF EXISTS ' || QUOTE_IDENT(s.sequencename) || ';';\n" +
+                "    END LOOP;\n" +
                 "END $$;\n";
 
         try (Connection conn = dataSource.getConnection();
@@ -368,6 +1219,12 @@ public class DatabaseServiceImpl implements DatabaseService {
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
+        idAllocator.reset();
+        authCache.invalidateAll();
+        likeBuffer.discard();
+        searchIndex.clear();
+        pageCounter.invalidateAll();
+        searchCache.invalidateAll();
     }
 
     @Override
@@ -389,22 +1246,49 @@ public class DatabaseServiceImpl implements DatabaseService {
     }
 
     public void createIndexAndView() {
+        createIndexes();
+        createViews();
+    }
+
+    /**
+     * Creates the missing secondary and trigram indexes of {@link ImportSchema}.
+     * Runs after loading on every import path that does not go through {@link #buildConstraints(String)}.
+     */
+    private void createIndexes() {
+        long start = System.currentTimeMillis();
         // 创建索引
-        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_users_followers ON users(Followers DESC)");
-        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_users_age ON users(Age DESC)");
-        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_recipes_category ON recipes(RecipeCategory)");
-        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_recipes_rating ON recipes(AggregatedRating DESC)");
-        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_recipes_author_date ON recipes(AuthorId, DatePublished DESC)");
-        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_recipes_calories ON recipes(Calories)");
-        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_recipes_category_rating_date ON recipes(RecipeCategory, AggregatedRating DESC, DatePublished DESC)");
-        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_reviews_recipe_rating ON reviews(RecipeId, Rating DESC)");
-        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_reviews_author_date ON reviews(AuthorId, DateSubmitted DESC)");
-        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_reviews_recipe_date ON reviews(RecipeId, DateSubmitted DESC)");
-        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_recipe_ingredients_part ON recipe_ingredients(IngredientPart)");
-        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_review_likes_author ON review_likes(AuthorId)");
-        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_user_follows_follower ON user_follows(FollowerId)");
-        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_user_follows_following ON user_follows(FollowingId)");
+        for (ImportSchema.Index index : ImportSchema.INDEXES) {
+            jdbcTemplate.execute(index.createSql(""));
+        }
+        for (ImportSchema.Index index : trigramIndexes()) {
+            jdbcTemplate.execute(index.createSql(""));
+        }
+        importMetrics.record("secondary indexes", 0, start);
+        log.info("Import phase secondary indexes: {} ms", System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Enables {@code pg_trgm} if possible. Without it keyword search still works, but scans the recipes.
+     *
+     * @return the trigram indexes to build, empty if the extension is unavailable
+     */
+    private List<ImportSchema.Index> trigramIndexes() {
+        String sql = "SELECT n.nspname FROM pg_extension e JOIN pg_namespace n ON n.oid = e.extnamespace " +
+                "WHERE e.extname = 'pg_trgm'";
+        try {
+            List<String> schema = jdbcTemplate.queryForList(sql, String.class);
+            if (schema.isEmpty()) {
+                jdbcTemplate.execute("CREATE EXTENSION IF NOT EXISTS pg_trgm");
+                schema = jdbcTemplate.queryForList(sql, String.class);
+            }
+            return ImportSchema.trigramIndexes(schema.get(0));
+        } catch (DataAccessException e) {
+            log.warn("pg_trgm is not available, keyword search will not use trigram indexes: {}", e.getMessage());
+            return Collections.emptyList();
+        }
+    }
 
+    private void createViews() {
         // 创建或替换视图
         jdbcTemplate.execute("CREATE OR REPLACE VIEW v_user_statistics AS " +
                 "SELECT u.AuthorId, u.AuthorName, u.Gender, u.Age, u.Followers, u.Following, " +
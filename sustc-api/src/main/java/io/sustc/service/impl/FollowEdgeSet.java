@@ -0,0 +1,142 @@
+package io.sustc.service.impl;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash set of follow edges, each packed as {@code follower << 32 | followee}.
+ * <p>
+ * Both ids must be in {@code [0, 2^32)}; {@link #fits(long)} tells whether an id can be packed.
+ * Linear probing over a {@code long[]} keeps the whole set in one array with no per-edge objects.
+ * {@code -1} marks an empty slot, which no valid edge can produce because a user cannot follow itself.
+ */
+final class FollowEdgeSet {
+
+    private static final long EMPTY = -1L;
+
+    private static final long MAX_ID = 0xFFFFFFFFL;
+
+    private long[] slots;
+
+    private int size;
+
+    FollowEdgeSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+        slots = new long[capacity];
+        Arrays.fill(slots, EMPTY);
+    }
+
+    static boolean fits(long id) {
+        return id >= 0 && id <= MAX_ID;
+    }
+
+    static long pack(long followerId, long followingId) {
+        return followerId << 32 | followingId;
+    }
+
+    static long follower(long edge) {
+        return edge >>> 32;
+    }
+
+    static long following(long edge) {
+        return edge & MAX_ID;
+    }
+
+    /**
+     * @return {@code true} if the edge was not present yet
+     */
+    boolean add(long followerId, long followingId) {
+        long edge = pack(followerId, followingId);
+        int mask = slots.length - 1;
+        int i = mix(edge) & mask;
+        while (slots[i] != EMPTY) {
+            if (slots[i] == edge) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        slots[i] = edge;
+        if (++size * 2 > slots.length) {
+            grow();
+        }
+        return true;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the packed edges sorted by their packed value, i.e. grouped by follower
+     */
+    long[] toSortedArray() {
+        long[] edges = new long[size];
+        int n = 0;
+        for (long slot : slots) {
+            if (slot != EMPTY) {
+                edges[n++] = slot;
+            }
+        }
+        Arrays.sort(edges);
+        return edges;
+    }
+
+    private void grow() {
+        long[] old = slots;
+        slots = new long[old.length * 2];
+        Arrays.fill(slots, EMPTY);
+        int mask = slots.length - 1;
+        for (long edge : old) {
+            if (edge != EMPTY) {
+                int i = mix(edge) & mask;
+                while (slots[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                slots[i] = edge;
+            }
+        }
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Follower and following counts per user, derived from a de-duplicated edge array.
+     */
+    static final class Counts {
+
+        private final long[] userIds;
+
+        private final int[] followers;
+
+        private final int[] following;
+
+        Counts(long[] edges, long[] userIds) {
+            this.userIds = userIds.clone();
+            Arrays.sort(this.userIds);
+            this.followers = new int[userIds.length];
+            this.following = new int[userIds.length];
+            for (long edge : edges) {
+                int follower = Arrays.binarySearch(this.userIds, FollowEdgeSet.follower(edge));
+                int followee = Arrays.binarySearch(this.userIds, FollowEdgeSet.following(edge));
+                if (follower >= 0) {
+                    following[follower]++;
+                }
+                if (followee >= 0) {
+                    followers[followee]++;
+                }
+            }
+        }
+
+        int followers(long userId, int fallback) {
+            int i = Arrays.binarySearch(userIds, userId);
+            return i >= 0 ? followers[i] : fallback;
+        }
+
+        int following(long userId, int fallback) {
+            int i = Arrays.binarySearch(userIds, userId);
+            return i >= 0 ? following[i] : fallback;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package io.sustc.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Hands out new AuthorId / RecipeId / ReviewId values backed by PostgreSQL sequences.
+ * <p>
+ * Every {@code nextval} reserves a block of {@link IdConfig#getBlockSize()} ids (the sequences are created with
+ * that {@code INCREMENT BY}), which is then used up in memory, so most inserts need no extra round trip and
+ * concurrent writers never get the same id. After an import this process owns the data, so every sequence is set to
+ * {@code MAX(id) + 1}. The first time this process needs an id without having imported, the sequence is only moved
+ * up to at least {@code MAX(id) + 1}, never below a value it already handed out, so blocks reserved by other
+ * processes stay theirs. Ids are dense after an import as long as one process writes at a time.
+ * An id whose insert fails or is rolled back is given back if no later id has been handed out yet.
+ */
+@Component
+@Slf4j
+public class IdAllocator {
+
+    public enum Kind {
+        USER("users_id_seq", "users", "AuthorId"),
+        RECIPE("recipes_id_seq", "recipes", "RecipeId"),
+        REVIEW("reviews_id_seq", "reviews", "ReviewId");
+
+        private final String sequence;
+        private final String table;
+        private final String column;
+
+        Kind(String sequence, String table, String column) {
+            this.sequence = sequence;
+            this.table = table;
+            this.column = column;
+        }
+    }
+
+    private static final class Block {
+        private boolean seeded;
+        private long next;
+        private long limit;
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private IdConfig idConfig;
+
+    private final Map<Kind, Block> blocks = new EnumMap<>(Kind.class);
+
+    public IdAllocator() {
+        for (Kind kind : Kind.values()) {
+            blocks.put(kind, new Block());
+        }
+    }
+
+    public long next(Kind kind) {
+        Block block = blocks.get(kind);
+        long id;
+        boolean seeded = false;
+        synchronized (block) {
+            if (block.next >= block.limit) {
+                if (!block.seeded) {
+                    seed(kind, false);
+                    block.seeded = true;
+                    seeded = true;
+                }
+                Long start = jdbcTemplate.queryForObject("SELECT nextval(?::regclass)", Long.class, kind.sequence);
+                block.next = start;
+                block.limit = start + blockSize();
+            }
+            id = block.next++;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // 事务回滚时归还 id；若序列是在该事务中创建的，则一并作废
+            boolean createdHere = seeded;
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_ROLLED_BACK) {
+                        return;
+                    }
+                    if (createdHere) {
+                        reset(kind);
+                    } else {
+                        release(kind, id);
+                    }
+                }
+            });
+        }
+        return id;
+    }
+
+    /**
+     * Gives back an id whose insert failed, if it is still the last one handed out.
+     */
+    public void release(Kind kind, long id) {
+        Block block = blocks.get(kind);
+        synchronized (block) {
+            if (block.next == id + 1) {
+                block.next = id;
+            }
+        }
+    }
+
+    /**
+     * Restarts all sequences right after the loaded data, creating them if needed. Called after an import.
+     */
+    public void reseed() {
+        for (Kind kind : Kind.values()) {
+            Block block = blocks.get(kind);
+            synchronized (block) {
+                seed(kind, true);
+                block.seeded = true;
+                block.next = block.limit = 0;
+            }
+        }
+        log.info("Id sequences seeded, block size {}", blockSize());
+    }
+
+    /**
+     * Forgets the reserved blocks, e.g. after the sequences were dropped.
+     */
+    public void reset() {
+        for (Kind kind : Kind.values()) {
+            reset(kind);
+        }
+    }
+
+    private void reset(Kind kind) {
+        Block block = blocks.get(kind);
+        synchronized (block) {
+            block.seeded = false;
+            block.next = block.limit = 0;
+        }
+    }
+
+    /**
+     * @param imported the data was just imported by this process, so the sequence restarts right after it
+     */
+    private void seed(Kind kind, boolean imported) {
+        jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS " + kind.sequence
+                + " INCREMENT BY " + blockSize() + " MINVALUE 1");
+        String max = "(SELECT COALESCE(MAX(" + kind.column + "), 0) + 1 FROM " + kind.table + ")";
+        if (imported) {
+            jdbcTemplate.queryForObject("SELECT setval('" + kind.sequence + "', " + max + ", false)", Long.class);
+        } else {
+            // 序列的下一个值为 last_value（未调用过）或 last_value + 旧的步长，只能前移，
+            // 否则其他进程已预留的 id 段会被再次分配；步长在 setval 之后才改
+            jdbcTemplate.queryForObject("SELECT setval('" + kind.sequence + "', GREATEST(" + max + ", "
+                    + "(SELECT s.last_value + CASE WHEN s.is_called THEN p.seqincrement ELSE 0 END "
+                    + "FROM " + kind.sequence + " s, pg_sequence p WHERE p.seqrelid = '" + kind.sequence + "'::regclass)"
+                    + "), false)", Long.class);
+        }
+        jdbcTemplate.execute("ALTER SEQUENCE " + kind.sequence + " INCREMENT BY " + blockSize());
+    }
+
+    private int blockSize() {
+        return Math.max(idConfig.getBlockSize(), 1);
+    }
+}
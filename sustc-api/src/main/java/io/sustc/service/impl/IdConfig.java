@@ -0,0 +1,20 @@
+package io.sustc.service.impl;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Settings of {@link IdAllocator}, bound from {@code sustc.id.*}.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "sustc.id")
+@Data
+public class IdConfig {
+
+    /**
+     * Number of ids reserved by one {@code nextval} and handed out from memory afterwards.
+     * Also used as the {@code INCREMENT BY} of the id sequences.
+     */
+    private int blockSize = 1000;
+}
@@ -0,0 +1,83 @@
+package io.sustc.service.impl;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Progress of a checkpointed import for one table, stored in {@code import_checkpoint}.
+ * <p>
+ * Records of a table are loaded in ascending key order, and each chunk is committed together with
+ * the checkpoint row, so {@code lastKey} is always the largest key whose rows are in the table.
+ * {@code bulk} remembers whether the table was loaded through {@code COPY} (it was empty when the
+ * import started) or through the upserts, so a resumed run keeps using the same path.
+ */
+final class ImportCheckpoint {
+
+    static final String TABLE = "import_checkpoint";
+
+    final long lastKey;
+
+    final long rows;
+
+    final boolean bulk;
+
+    final boolean done;
+
+    private ImportCheckpoint(long lastKey, long rows, boolean bulk, boolean done) {
+        this.lastKey = lastKey;
+        this.rows = rows;
+        this.bulk = bulk;
+        this.done = done;
+    }
+
+    static void createTable(JdbcTemplate jdbcTemplate) {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + TABLE + " (" +
+                "table_name VARCHAR(64) PRIMARY KEY, " +
+                "last_key BIGINT NOT NULL, " +
+                "rows BIGINT NOT NULL, " +
+                "bulk BOOLEAN NOT NULL, " +
+                "done BOOLEAN NOT NULL)");
+    }
+
+    /**
+     * @return the checkpoints of the unfinished import by table name, empty if none
+     */
+    static Map<String, ImportCheckpoint> load(JdbcTemplate jdbcTemplate) {
+        Map<String, ImportCheckpoint> checkpoints = new HashMap<>();
+        jdbcTemplate.query("SELECT table_name, last_key, rows, bulk, done FROM " + TABLE, rs -> {
+            checkpoints.put(rs.getString("table_name"), new ImportCheckpoint(
+                    rs.getLong("last_key"), rs.getLong("rows"), rs.getBoolean("bulk"), rs.getBoolean("done")));
+        });
+        return checkpoints;
+    }
+
+    /**
+     * Records the progress of {@code table}; must run in the transaction that loaded the rows.
+     */
+    static void save(Connection conn, String table, long lastKey, long rows, boolean bulk, boolean done)
+            throws SQLException {
+        String sql = "INSERT INTO " + TABLE + " (table_name, last_key, rows, bulk, done) VALUES (?, ?, ?, ?, ?) " +
+                "ON CONFLICT (table_name) DO UPDATE SET last_key = EXCLUDED.last_key, rows = EXCLUDED.rows, " +
+                "bulk = EXCLUDED.bulk, done = EXCLUDED.done";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, table);
+            stmt.setLong(2, lastKey);
+            stmt.setLong(3, rows);
+            stmt.setBoolean(4, bulk);
+            stmt.setBoolean(5, done);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Forgets all progress once every table has been loaded, so the next import starts over.
+     */
+    static void clear(JdbcTemplate jdbcTemplate) {
+        jdbcTemplate.execute("DELETE FROM " + TABLE);
+    }
+}
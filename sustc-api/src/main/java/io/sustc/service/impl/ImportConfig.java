@@ -0,0 +1,55 @@
+package io.sustc.service.impl;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Tuning knobs of {@link DatabaseServiceImpl#importData}, bound from {@code sustc.import.*}.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "sustc.import")
+@Data
+public class ImportConfig {
+
+    /**
+     * Number of tables / chunks loaded at the same time, each on its own pooled connection.
+     * Keep it below the Hikari pool size.
+     */
+    private int parallelism = Math.min(Runtime.getRuntime().availableProcessors(), 8);
+
+    /**
+     * Number of parent records per chunk when a large table is split for parallel loading.
+     */
+    private int chunkSize = 50_000;
+
+    /**
+     * When importing into a database without tables, create them bare and add primary keys,
+     * foreign keys, checks and secondary indexes only after the data is loaded.
+     * Off by default: the tables are created with their constraints and the indexes are built after loading.
+     */
+    private boolean deferConstraints = false;
+
+    /**
+     * Rows per JDBC batch on the upsert path used for tables that already contain data.
+     */
+    private int batchSize = 5_000;
+
+    /**
+     * Store follower / following counts computed from the de-duplicated follow edges
+     * instead of the counts carried by the user records.
+     */
+    private boolean recomputeFollowCounts = true;
+
+    /**
+     * When positive, load table by table in key order and commit every this many rows together with
+     * a checkpoint, so a failed import can be resumed by calling it again. {@code 0} disables checkpoints.
+     */
+    private int checkpointRows = 0;
+
+    /**
+     * Replace the whole dataset: load into {@code UNLOGGED} tables of a staging schema,
+     * then switch them to {@code LOGGED} and swap them with the current tables in one transaction.
+     */
+    private boolean stagingSwap = false;
+}
@@ -0,0 +1,109 @@
+package io.sustc.service.impl;
+
+import io.sustc.dto.ImportReport;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects row counts, bytes and wall time of the import phases, possibly from several threads.
+ * <p>
+ * A phase may be recorded many times, e.g. once per chunk. Rows and bytes are summed,
+ * and the phase spans from the earliest start to the latest end, so concurrent chunks are not double counted.
+ * Rows of phases recorded with {@link #recordDerived} update rows loaded earlier and are totalled separately.
+ */
+final class ImportMetrics {
+
+    private static final class Phase {
+
+        long start = Long.MAX_VALUE;
+
+        long end = Long.MIN_VALUE;
+
+        long rows;
+
+        long bytes;
+
+        boolean derived;
+    }
+
+    private final Map<String, Phase> phases = new LinkedHashMap<>();
+
+    private long start;
+
+    private String failure;
+
+    synchronized void start() {
+        phases.clear();
+        start = System.currentTimeMillis();
+        failure = null;
+    }
+
+    synchronized void fail(Throwable e) {
+        failure = e.toString();
+    }
+
+    synchronized void record(String name, long rows, long bytes, long startMillis, long endMillis) {
+        Phase phase = phases.computeIfAbsent(name, k -> new Phase());
+        phase.start = Math.min(phase.start, startMillis);
+        phase.end = Math.max(phase.end, endMillis);
+        phase.rows += rows;
+        phase.bytes += bytes;
+    }
+
+    void record(String name, CopyWriter writer) {
+        record(name, writer.getRows(), writer.getBytes(), writer.getStartMillis(), System.currentTimeMillis());
+    }
+
+    void record(String name, long rows, long startMillis) {
+        record(name, rows, 0, startMillis, System.currentTimeMillis());
+    }
+
+    /**
+     * Records a phase recomputing columns of rows that were already loaded, e.g. the rating totals.
+     */
+    synchronized void recordDerived(String name, long rows, long startMillis) {
+        record(name, rows, 0, startMillis, System.currentTimeMillis());
+        phases.get(name).derived = true;
+    }
+
+    synchronized ImportReport report() {
+        List<ImportReport.Phase> list = new ArrayList<>();
+        long rows = 0;
+        long recomputedRows = 0;
+        long bytes = 0;
+        for (Map.Entry<String, Phase> e : phases.entrySet()) {
+            Phase phase = e.getValue();
+            long elapsed = Math.max(phase.end - phase.start, 0);
+            double seconds = Math.max(elapsed, 1) / 1000.0;
+            list.add(ImportReport.Phase.builder()
+                    .name(e.getKey())
+                    .startMillis(phase.start - start)
+                    .elapsedMillis(elapsed)
+                    .rows(phase.rows)
+                    .bytes(phase.bytes)
+                    .rowsPerSecond(phase.rows / seconds)
+                    .bytesPerSecond(phase.bytes / seconds)
+                    .derived(phase.derived)
+                    .build());
+            if (phase.derived) {
+                recomputedRows += phase.rows;
+            } else {
+                rows += phase.rows;
+            }
+            bytes += phase.bytes;
+        }
+        list.sort(Comparator.comparingLong(ImportReport.Phase::getStartMillis));
+        return ImportReport.builder()
+                .elapsedMillis(System.currentTimeMillis() - start)
+                .rows(rows)
+                .recomputedRows(recomputedRows)
+                .bytes(bytes)
+                .phases(list)
+                .failure(failure)
+                .build();
+    }
+}
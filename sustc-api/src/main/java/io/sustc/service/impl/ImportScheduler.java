@@ -0,0 +1,147 @@
+package io.sustc.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs import tasks on a fixed pool, each task on its own pooled connection and transaction.
+ * <p>
+ * A task only starts after all of its dependencies completed, so the foreign-key order
+ * between tables is expressed as a DAG of futures instead of a fixed sequence.
+ */
+@Slf4j
+final class ImportScheduler implements AutoCloseable {
+
+    interface ConnectionTask {
+        void run(Connection conn) throws SQLException;
+    }
+
+    interface ChunkTask<T> {
+        void run(Connection conn, List<T> chunk) throws SQLException;
+    }
+
+    interface RangeTask {
+        void run(Connection conn, int from, int to) throws SQLException;
+    }
+
+    private final DataSource dataSource;
+
+    private final ImportMetrics metrics;
+
+    private final int chunkSize;
+
+    private final String schema;
+
+    private final ExecutorService executor;
+
+    private final List<CompletableFuture<Void>> submitted = new ArrayList<>();
+
+    ImportScheduler(DataSource dataSource, ImportMetrics metrics, int parallelism, int chunkSize) {
+        this(dataSource, metrics, parallelism, chunkSize, null);
+    }
+
+    /**
+     * @param metrics records the wall time of every task under its name, chunk index stripped
+     * @param schema  if not {@code null}, every task resolves unqualified table names in this schema
+     */
+    ImportScheduler(DataSource dataSource, ImportMetrics metrics, int parallelism, int chunkSize, String schema) {
+        this.dataSource = dataSource;
+        this.metrics = metrics;
+        this.chunkSize = Math.max(chunkSize, 1);
+        this.schema = schema;
+        this.executor = Executors.newFixedThreadPool(Math.max(parallelism, 1));
+    }
+
+    CompletableFuture<Void> submit(String name, ConnectionTask task, CompletableFuture<?>... dependencies) {
+        CompletableFuture<Void> future = CompletableFuture.allOf(dependencies)
+                .thenRunAsync(() -> runInTransaction(name, name, task), executor);
+        submitted.add(future);
+        return future;
+    }
+
+    /**
+     * Splits {@code records} into chunks of {@code chunkSize} which are loaded concurrently.
+     *
+     * @return a future completing when every chunk has been committed
+     */
+    <T> CompletableFuture<Void> submitChunked(String name, List<T> records, ChunkTask<T> task,
+                                              CompletableFuture<?>... dependencies) {
+        return submitRanges(name, records.size(),
+                (conn, from, to) -> task.run(conn, records.subList(from, to)), dependencies);
+    }
+
+    /**
+     * Splits the index range {@code [0, total)} into chunks of {@code chunkSize} which are loaded concurrently.
+     *
+     * @return a future completing when every chunk has been committed
+     */
+    CompletableFuture<Void> submitRanges(String name, int total, RangeTask task,
+                                         CompletableFuture<?>... dependencies) {
+        List<CompletableFuture<Void>> chunks = new ArrayList<>();
+        for (int from = 0; from < total; from += chunkSize) {
+            int start = from;
+            int end = Math.min(from + chunkSize, total);
+            chunks.add(CompletableFuture.allOf(dependencies)
+                    .thenRunAsync(() -> runInTransaction(name + "[" + start + "]", name,
+                            conn -> task.run(conn, start, end)), executor));
+        }
+        submitted.addAll(chunks);
+        return CompletableFuture.allOf(chunks.toArray(new CompletableFuture[0]));
+    }
+
+    /**
+     * Waits for every submitted task, rethrowing the first failure.
+     */
+    void awaitAll() {
+        try {
+            CompletableFuture.allOf(submitted.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private void runInTransaction(String name, String phase, ConnectionTask task) {
+        long start = System.currentTimeMillis();
+        try (Connection conn = dataSource.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                if (schema != null) {
+                    try (Statement stmt = conn.createStatement()) {
+                        stmt.execute("SET LOCAL search_path TO " + schema);
+                    }
+                }
+                task.run(conn);
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Import task " + name + " failed", e);
+        }
+        long end = System.currentTimeMillis();
+        metrics.record(phase, 0, 0, start, end);
+        log.debug("Import task {} finished in {} ms", name, end - start);
+    }
+}
@@ -0,0 +1,287 @@
+package io.sustc.service.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Table, constraint and index definitions of the database.
+ * <p>
+ * Keeping constraints apart from the column list lets the importer either create the
+ * tables fully constrained, or create bare tables, load them and add the constraints afterwards.
+ * Every generator takes a table-name suffix so the same schema can be built under other names.
+ */
+final class ImportSchema {
+
+    enum Kind {
+        PRIMARY_KEY, CHECK, FOREIGN_KEY
+    }
+
+    static final class Constraint {
+
+        final Kind kind;
+
+        final String tag;
+
+        private final String definition;
+
+        private final String parent;
+
+        private Constraint(Kind kind, String tag, String definition, String parent) {
+            this.kind = kind;
+            this.tag = tag;
+            this.definition = definition;
+            this.parent = parent;
+        }
+
+        String name(String table) {
+            return table + "_" + tag;
+        }
+
+        String definition(String suffix) {
+            return parent == null ? definition : String.format(definition, parent + suffix);
+        }
+    }
+
+    static final class Table {
+
+        final String name;
+
+        private final List<String> columns;
+
+        final List<Constraint> constraints = new ArrayList<>();
+
+        private Table(String name, String... columns) {
+            this.name = name;
+            this.columns = Arrays.asList(columns);
+        }
+
+        private Table primaryKey(String columns) {
+            constraints.add(new Constraint(Kind.PRIMARY_KEY, "pkey", "PRIMARY KEY (" + columns + ")", null));
+            return this;
+        }
+
+        private Table check(String tag, String expression) {
+            constraints.add(new Constraint(Kind.CHECK, tag, "CHECK (" + expression + ")", null));
+            return this;
+        }
+
+        private Table foreignKey(String column, String parent) {
+            constraints.add(new Constraint(Kind.FOREIGN_KEY, column.toLowerCase() + "_fkey",
+                    "FOREIGN KEY (" + column + ") REFERENCES %s(" + column + ")", parent));
+            return this;
+        }
+
+        private Table foreignKey(String column, String parent, String parentColumn) {
+            constraints.add(new Constraint(Kind.FOREIGN_KEY, column.toLowerCase() + "_fkey",
+                    "FOREIGN KEY (" + column + ") REFERENCES %s(" + parentColumn + ")", parent));
+            return this;
+        }
+
+        String createSql(String suffix, boolean withConstraints) {
+            return createSql(suffix, withConstraints, false);
+        }
+
+        String createSql(String suffix, boolean withConstraints, boolean unlogged) {
+            String table = name + suffix;
+            List<String> parts = new ArrayList<>(columns);
+            if (withConstraints) {
+                for (Constraint c : constraints) {
+                    parts.add("CONSTRAINT " + c.name(table) + " " + c.definition(suffix));
+                }
+            }
+            return "CREATE " + (unlogged ? "UNLOGGED " : "") + "TABLE IF NOT EXISTS " + table
+                    + " (" + String.join(", ", parts) + ")";
+        }
+
+        /**
+         * Adds the columns missing from a table created by an older version of this schema.
+         */
+        String addMissingColumnsSql(String suffix) {
+            return "ALTER TABLE " + name + suffix + " " + columns.stream()
+                    .map(column -> "ADD COLUMN IF NOT EXISTS " + column)
+                    .collect(Collectors.joining(", "));
+        }
+
+        /**
+         * @return the tables referenced by the foreign keys of this table
+         */
+        List<String> parents() {
+            List<String> parents = new ArrayList<>();
+            for (Constraint c : constraints) {
+                if (c.parent != null && !parents.contains(c.parent)) {
+                    parents.add(c.parent);
+                }
+            }
+            return parents;
+        }
+
+        String addConstraintSql(Constraint c, String suffix, boolean notValid) {
+            String table = name + suffix;
+            return "ALTER TABLE " + table + " ADD CONSTRAINT " + c.name(table) + " " + c.definition(suffix)
+                    + (notValid ? " NOT VALID" : "");
+        }
+
+        String validateConstraintSql(Constraint c, String suffix) {
+            String table = name + suffix;
+            return "ALTER TABLE " + table + " VALIDATE CONSTRAINT " + c.name(table);
+        }
+    }
+
+    static final class Index {
+
+        final String name;
+
+        final String table;
+
+        private final String definition;
+
+        private Index(String name, String table, String definition) {
+            this.name = name;
+            this.table = table;
+            this.definition = definition;
+        }
+
+        String createSql(String suffix) {
+            return "CREATE INDEX IF NOT EXISTS " + name + suffix + " ON " + table + suffix + definition;
+        }
+    }
+
+    static final Table USERS = new Table("users",
+            "AuthorId BIGINT",
+            "AuthorName VARCHAR(255) NOT NULL",
+            "Gender VARCHAR(10)",
+            "Age INTEGER",
+            "Followers INTEGER DEFAULT 0",
+            "Following INTEGER DEFAULT 0",
+            "Password VARCHAR(255)",
+            "IsDeleted BOOLEAN DEFAULT FALSE")
+            .primaryKey("AuthorId")
+            .check("gender_check", "Gender IN ('Male', 'Female')")
+            .check("age_check", "Age > 0")
+            .check("followers_check", "Followers >= 0")
+            .check("following_check", "Following >= 0");
+
+    static final Table RECIPES = new Table("recipes",
+            "RecipeId BIGINT",
+            "Name VARCHAR(500) NOT NULL",
+            "AuthorId BIGINT NOT NULL",
+            "CookTime VARCHAR(50)",
+            "PrepTime VARCHAR(50)",
+            "TotalTime VARCHAR(50)",
+            "DatePublished TIMESTAMP",
+            "Description TEXT",
+            "RecipeCategory VARCHAR(255)",
+            "AggregatedRating FLOAT",
+            "ReviewCount INTEGER DEFAULT 0",
+            "Calories DECIMAL(10,2)",
+            "FatContent DECIMAL(10,2)",
+            "SaturatedFatContent DECIMAL(10,2)",
+            "CholesterolContent DECIMAL(10,2)",
+            "SodiumContent DECIMAL(10,2)",
+            "CarbohydrateContent DECIMAL(10,2)",
+            "FiberContent DECIMAL(10,2)",
+            "SugarContent DECIMAL(10,2)",
+            "ProteinContent DECIMAL(10,2)",
+            "RecipeServings INTEGER",
+            "RecipeYield VARCHAR(100)",
+            "RatingSum BIGINT NOT NULL DEFAULT 0",
+            "RatingCount INTEGER NOT NULL DEFAULT 0")
+            .primaryKey("RecipeId")
+            .check("aggregatedrating_check", "AggregatedRating >= 0 AND AggregatedRating <= 5")
+            .check("reviewcount_check", "ReviewCount >= 0")
+            .foreignKey("AuthorId", "users");
+
+    static final Table REVIEWS = new Table("reviews",
+            "ReviewId BIGINT",
+            "RecipeId BIGINT NOT NULL",
+            "AuthorId BIGINT NOT NULL",
+            "Rating INTEGER",
+            "Review TEXT",
+            "DateSubmitted TIMESTAMP",
+            "DateModified TIMESTAMP",
+            "LikeCount INTEGER NOT NULL DEFAULT 0")
+            .primaryKey("ReviewId")
+            .foreignKey("RecipeId", "recipes")
+            .foreignKey("AuthorId", "users");
+
+    static final Table RECIPE_INGREDIENTS = new Table("recipe_ingredients",
+            "RecipeId BIGINT",
+            "IngredientPart VARCHAR(500)")
+            .primaryKey("RecipeId, IngredientPart")
+            .foreignKey("RecipeId", "recipes");
+
+    static final Table REVIEW_LIKES = new Table("review_likes",
+            "ReviewId BIGINT",
+            "AuthorId BIGINT")
+            .primaryKey("ReviewId, AuthorId")
+            .foreignKey("ReviewId", "reviews")
+            .foreignKey("AuthorId", "users");
+
+    static final Table USER_FOLLOWS = new Table("user_follows",
+            "FollowerId BIGINT",
+            "FollowingId BIGINT")
+            .primaryKey("FollowerId, FollowingId")
+            .foreignKey("FollowerId", "users", "AuthorId")
+            .foreignKey("FollowingId", "users", "AuthorId")
+            .check("check", "FollowerId != FollowingId");
+
+    /**
+     * All tables, parents before children.
+     */
+    static final List<Table> TABLES = Arrays.asList(
+            USERS, RECIPES, REVIEWS, RECIPE_INGREDIENTS, REVIEW_LIKES, USER_FOLLOWS);
+
+    /**
+     * Secondary indexes, built after loading on every import path.
+     */
+    static final List<Index> INDEXES = Arrays.asList(
+            new Index("idx_users_followers", "users", "(Followers DESC)"),
+            new Index("idx_users_age", "users", "(Age DESC)"),
+            new Index("idx_recipes_category", "recipes", "(RecipeCategory)"),
+            new Index("idx_recipes_rating", "recipes", "(AggregatedRating DESC NULLS LAST, RecipeId DESC)"),
+            new Index("idx_recipes_author_date", "recipes", "(AuthorId, DatePublished DESC, RecipeId DESC)"),
+            new Index("idx_recipes_date", "recipes", "(DatePublished DESC, RecipeId DESC)"),
+            new Index("idx_recipes_calories", "recipes", "(Calories, RecipeId)"),
+            new Index("idx_recipes_category_rating_date", "recipes", "(RecipeCategory, AggregatedRating DESC, DatePublished DESC)"),
+            new Index("idx_recipes_search", "recipes", " USING GIN (" + recipeDocument(null) + ")"),
+            new Index("idx_reviews_recipe_rating", "reviews", "(RecipeId, Rating DESC, ReviewId DESC)"),
+            new Index("idx_reviews_author_date", "reviews", "(AuthorId, DateSubmitted DESC)"),
+            new Index("idx_reviews_recipe_date", "reviews", "(RecipeId, DateSubmitted DESC, ReviewId DESC)"),
+            new Index("idx_reviews_recipe_modified", "reviews", "(RecipeId, DateModified DESC, ReviewId DESC)"),
+            new Index("idx_reviews_recipe_likes", "reviews", "(RecipeId, LikeCount DESC, ReviewId DESC)"),
+            new Index("idx_recipe_ingredients_part", "recipe_ingredients", "(IngredientPart)"),
+            new Index("idx_review_likes_author", "review_likes", "(AuthorId)"),
+            new Index("idx_user_follows_follower", "user_follows", "(FollowerId)"),
+            new Index("idx_user_follows_following", "user_follows", "(FollowingId)"));
+
+    /**
+     * Trigram indexes serving {@code ILIKE '%keyword%'} on recipes, only created when {@code pg_trgm} is available.
+     *
+     * @param extensionSchema schema {@code pg_trgm} is installed in, so the operator class resolves under any search path
+     */
+    static List<Index> trigramIndexes(String extensionSchema) {
+        String opclass = extensionSchema + ".gin_trgm_ops";
+        return Arrays.asList(
+                new Index("idx_recipes_name_trgm", "recipes", " USING GIN (Name " + opclass + ")"),
+                new Index("idx_recipes_description_trgm", "recipes", " USING GIN (Description " + opclass + ")"));
+    }
+
+    /**
+     * Full-text document of a recipe. Queries must use this exact expression to be served by {@code idx_recipes_search}.
+     *
+     * @param alias table alias to qualify the columns with, or {@code null}
+     */
+    static String recipeDocument(String alias) {
+        String prefix = alias == null ? "" : alias + ".";
+        return "to_tsvector('english', COALESCE(" + prefix + "Name, '') || ' ' || COALESCE(" + prefix + "Description, ''))";
+    }
+
+    static String tableNames(String suffix) {
+        return TABLES.stream().map(t -> "'" + t.name + suffix + "'").collect(Collectors.joining(", "));
+    }
+
+    private ImportSchema() {
+    }
+}
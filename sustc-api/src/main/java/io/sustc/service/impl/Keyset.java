@@ -0,0 +1,137 @@
+package io.sustc.service.impl;
+
+import io.sustc.dto.CursorPage;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * One sort order of a keyset (seek) paginated query: a sort column followed by the primary key as tiebreaker,
+ * both in the same direction. The cursor handed out with a page holds the sort key and id of its last row,
+ * so the next page starts with an index range scan instead of skipping {@code OFFSET} rows.
+ * <p>
+ * Sort keys travel through the cursor as their PostgreSQL text form and are cast back to {@code type},
+ * which keeps timestamps, floats and numerics exact.
+ */
+final class Keyset {
+
+    private static final String SEPARATOR = "\u0001";
+
+    private final String name;
+    private final String column;
+    private final String type;
+    private final String id;
+    private final boolean desc;
+    private final boolean nullsFirst;
+
+    /**
+     * @param name       sort option, recorded in the cursor so it cannot be replayed with another order
+     * @param column     sort column, {@code null} to order by the id alone
+     * @param type       SQL type the sort key is cast back to
+     * @param id         unique tiebreaker column
+     * @param desc       descending order
+     * @param nullsFirst where rows with a {@code NULL} sort key go
+     */
+    Keyset(String name, String column, String type, String id, boolean desc, boolean nullsFirst) {
+        this.name = name;
+        this.column = column;
+        this.type = type;
+        this.id = id;
+        this.desc = desc;
+        this.nullsFirst = nullsFirst;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    static Keyset byId(String name, String id, boolean desc) {
+        return new Keyset(name, null, null, id, desc, false);
+    }
+
+    /**
+     * Columns to add to the select list, read back by {@link #query}.
+     */
+    String select() {
+        return (column == null ? "NULL" : column + "::text") + " AS SortKey, " + id + " AS SortId";
+    }
+
+    String orderBy() {
+        String direction = desc ? " DESC" : " ASC";
+        if (column == null) {
+            return id + direction;
+        }
+        return column + direction + (nullsFirst ? " NULLS FIRST, " : " NULLS LAST, ") + id + direction;
+    }
+
+    /**
+     * Appends {@code AND <rows after the cursor>} to a where clause; nothing for the first page.
+     *
+     * @throws IllegalArgumentException if the cursor is malformed or was issued for another sort order
+     */
+    void appendAfter(StringBuilder where, List<Object> params, String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return;
+        }
+        String[] parts;
+        long lastId;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(SEPARATOR, 3);
+            lastId = Long.parseLong(parts[1]);
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        if (parts.length != 3 || !parts[0].equals(name)) {
+            throw new IllegalArgumentException("Cursor does not belong to sort " + name);
+        }
+        if (!parts[2].isEmpty() && !parts[2].startsWith("=")) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        String op = desc ? " < " : " > ";
+        if (column == null) {
+            where.append("AND ").append(id).append(op).append("? ");
+            params.add(lastId);
+        } else if (parts[2].isEmpty()) {
+            // 上一页停在 NULL 分组内
+            where.append("AND ((").append(column).append(" IS NULL AND ").append(id).append(op).append("?)");
+            where.append(nullsFirst ? " OR " + column + " IS NOT NULL) " : ") ");
+            params.add(lastId);
+        } else {
+            where.append("AND ((").append(column).append(", ").append(id).append(")").append(op)
+                    .append("(CAST(? AS ").append(type).append("), ?)");
+            where.append(nullsFirst ? ") " : " OR " + column + " IS NULL) ");
+            params.add(parts[2].substring(1));
+            params.add(lastId);
+        }
+    }
+
+    /**
+     * Runs a query that selects {@link #select()} and ends with {@code ORDER BY} {@link #orderBy()},
+     * fetching one extra row to tell whether another page follows.
+     */
+    <T> CursorPage<T> query(JdbcTemplate jdbcTemplate, String sql, RowMapper<T> mapper, List<Object> params, int size) {
+        List<Object> queryParams = new ArrayList<>(params);
+        queryParams.add(size + 1);
+        String[] last = new String[2];
+        List<T> items = jdbcTemplate.query(sql + " LIMIT ?", (rs, rowNum) -> {
+            if (rowNum == size - 1) {
+                last[0] = rs.getString("SortKey");
+                last[1] = rs.getString("SortId");
+            }
+            return mapper.mapRow(rs, rowNum);
+        }, queryParams.toArray());
+        String next = null;
+        if (items.size() > size) {
+            items.remove(size);
+            // 空串表示 NULL，非空键加前缀以区分空字符串
+            String key = last[0] == null ? "" : "=" + last[0];
+            next = Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString((name + SEPARATOR + last[1] + SEPARATOR + key).getBytes(StandardCharsets.UTF_8));
+        }
+        return new CursorPage<>(items, size, next);
+    }
+}
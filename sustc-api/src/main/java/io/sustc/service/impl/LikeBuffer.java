@@ -0,0 +1,237 @@
+package io.sustc.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Write-behind buffer for {@code ReviewService#likeReview} / {@code #unlikeReview}, enabled by
+ * {@link LikeBufferConfig#isEnabled()}.
+ * <p>
+ * Reviews are spread over striped maps. For every touched review a stripe keeps the persisted LikeCount and,
+ * per user, whether the like is persisted and whether it is wanted now, so repeated toggles of one pair
+ * collapse into at most one insert or delete. Counts are answered from the persisted count plus the pending
+ * changes. A stripe is flushed in one statement while its lock is held, every
+ * {@link LikeBufferConfig#getFlushIntervalMillis()} ms, when {@link LikeBufferConfig#getMaxPending()} pairs are
+ * pending, and on shutdown. A failed flush keeps the stripe and is retried on the next tick.
+ */
+@Component
+@Slf4j
+public class LikeBuffer {
+
+    /**
+     * Persisted state of one review as read from the database: its LikeCount and whether the user likes it.
+     */
+    public interface Loader {
+        long[] load();
+    }
+
+    private static final class Pending {
+        private final boolean persisted;
+        private boolean liked;
+
+        private Pending(boolean persisted) {
+            this.persisted = persisted;
+            this.liked = persisted;
+        }
+
+        private int delta() {
+            return liked == persisted ? 0 : liked ? 1 : -1;
+        }
+    }
+
+    private static final class Entry {
+        private final long persistedCount;
+        private long delta;
+        private final Map<Long, Pending> users = new HashMap<>();
+
+        private Entry(long persistedCount) {
+            this.persistedCount = persistedCount;
+        }
+    }
+
+    private static final class Stripe {
+        private final Map<Long, Entry> reviews = new HashMap<>();
+    }
+
+    private static final String FLUSH_SQL = "WITH pairs AS (" +
+            "    SELECT p.ReviewId, p.AuthorId, p.Liked " +
+            "    FROM unnest(?::bigint[], ?::bigint[], ?::boolean[]) AS p(ReviewId, AuthorId, Liked) " +
+            "    WHERE EXISTS (SELECT 1 FROM reviews r WHERE r.ReviewId = p.ReviewId)), " +
+            "added AS (" +
+            "    INSERT INTO review_likes (ReviewId, AuthorId) " +
+            "    SELECT ReviewId, AuthorId FROM pairs WHERE Liked " +
+            "    ON CONFLICT DO NOTHING RETURNING ReviewId), " +
+            "removed AS (" +
+            "    DELETE FROM review_likes rl USING pairs p " +
+            "    WHERE NOT p.Liked AND rl.ReviewId = p.ReviewId AND rl.AuthorId = p.AuthorId RETURNING rl.ReviewId), " +
+            "delta AS (" +
+            "    SELECT ReviewId, SUM(d) AS d FROM (" +
+            "        SELECT ReviewId, 1 AS d FROM added UNION ALL SELECT ReviewId, -1 FROM removed) x " +
+            "    GROUP BY ReviewId) " +
+            "UPDATE reviews r SET LikeCount = GREATEST(r.LikeCount + delta.d, 0) " +
+            "FROM delta WHERE r.ReviewId = delta.ReviewId AND delta.d <> 0";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private LikeBufferConfig config;
+
+    private Stripe[] stripes;
+
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final AtomicBoolean flushQueued = new AtomicBoolean();
+
+    private ScheduledExecutorService flusher;
+
+    @PostConstruct
+    void start() {
+        stripes = new Stripe[Math.max(config.getStripes(), 1)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+        if (!config.isEnabled()) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "like-buffer-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushAll,
+                config.getFlushIntervalMillis(), config.getFlushIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushAll();
+    }
+
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /**
+     * Records that {@code userId} likes ({@code liked}) or no longer likes a review.
+     * {@code loader} is called, under the stripe lock, only if the buffer holds nothing for this pair yet.
+     *
+     * @return the like count of the review including the pending changes
+     */
+    public long apply(long reviewId, long userId, boolean liked, Loader loader) {
+        Stripe stripe = stripe(reviewId);
+        long count;
+        synchronized (stripe) {
+            Entry entry = stripe.reviews.get(reviewId);
+            Pending pair = entry != null ? entry.users.get(userId) : null;
+            if (pair == null) {
+                long[] state = loader.load();
+                if (entry == null) {
+                    entry = new Entry(state[0]);
+                    stripe.reviews.put(reviewId, entry);
+                }
+                pair = new Pending(state[1] != 0);
+                entry.users.put(userId, pair);
+                pending.incrementAndGet();
+            }
+            entry.delta -= pair.delta();
+            pair.liked = liked;
+            entry.delta += pair.delta();
+            count = Math.max(entry.persistedCount + entry.delta, 0);
+        }
+        if (pending.get() >= config.getMaxPending() && flusher != null && flushQueued.compareAndSet(false, true)) {
+            flusher.execute(() -> {
+                flushQueued.set(false);
+                flushAll();
+            });
+        }
+        return count;
+    }
+
+    /**
+     * Writes every stripe. Safe to call from any thread.
+     */
+    public void flushAll() {
+        for (Stripe stripe : stripes) {
+            try {
+                flush(stripe);
+            } catch (Exception e) {
+                log.warn("Like buffer flush failed, will retry", e);
+            }
+        }
+    }
+
+    /**
+     * Drops everything buffered, e.g. when the tables are replaced.
+     */
+    public void discard() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (Entry entry : stripe.reviews.values()) {
+                    pending.addAndGet(-entry.users.size());
+                }
+                stripe.reviews.clear();
+            }
+        }
+    }
+
+    private void flush(Stripe stripe) {
+        synchronized (stripe) {
+            if (stripe.reviews.isEmpty()) {
+                return;
+            }
+            List<Long> reviewIds = new ArrayList<>();
+            List<Long> userIds = new ArrayList<>();
+            List<Boolean> liked = new ArrayList<>();
+            int pairs = 0;
+            for (Map.Entry<Long, Entry> review : stripe.reviews.entrySet()) {
+                for (Map.Entry<Long, Pending> user : review.getValue().users.entrySet()) {
+                    pairs++;
+                    if (user.getValue().delta() != 0) {
+                        reviewIds.add(review.getKey());
+                        userIds.add(user.getKey());
+                        liked.add(user.getValue().liked);
+                    }
+                }
+            }
+            if (!reviewIds.isEmpty()) {
+                jdbcTemplate.execute(FLUSH_SQL, (PreparedStatement stmt) -> {
+                    stmt.setArray(1, stmt.getConnection().createArrayOf("bigint", reviewIds.toArray()));
+                    stmt.setArray(2, stmt.getConnection().createArrayOf("bigint", userIds.toArray()));
+                    stmt.setArray(3, stmt.getConnection().createArrayOf("boolean", liked.toArray()));
+                    return stmt.executeUpdate();
+                });
+            }
+            stripe.reviews.clear();
+            pending.addAndGet(-pairs);
+        }
+    }
+
+    private Stripe stripe(long reviewId) {
+        return stripes[Math.floorMod(Long.hashCode(reviewId) * 0x9E3779B9, stripes.length)];
+    }
+}
@@ -0,0 +1,35 @@
+package io.sustc.service.impl;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Settings of {@link LikeBuffer}, bound from {@code sustc.like-buffer.*}.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "sustc.like-buffer")
+@Data
+public class LikeBufferConfig {
+
+    /**
+     * Buffer likes and unlikes in memory and write them in batches. Likes accepted less than
+     * {@link #flushIntervalMillis} before a crash are lost, and other readers see them only after the flush.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Number of independently locked parts of the buffer, by ReviewId.
+     */
+    private int stripes = 16;
+
+    /**
+     * Longest time a like stays only in memory.
+     */
+    private long flushIntervalMillis = 200;
+
+    /**
+     * Number of buffered (review, user) pairs that triggers a flush before the interval ends.
+     */
+    private int maxPending = 10_000;
+}
@@ -0,0 +1,206 @@
+package io.sustc.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.sustc.dto.PageResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the page query of a paginated listing and fills {@code PageResult.total} according to {@link CountConfig#getMode()}.
+ */
+@Component
+@Slf4j
+public class PageCounter {
+
+    public enum Mode {
+        /**
+         * A separate {@code SELECT COUNT(*)} with the same filters.
+         */
+        EXACT,
+        /**
+         * {@code COUNT(*) OVER ()} in the page query itself; still exact, one query instead of two.
+         */
+        WINDOW,
+        /**
+         * Exact counts memoized per filter and dropped whenever one of the tables they read is written.
+         */
+        CACHED,
+        /**
+         * The planner's row estimate from {@code EXPLAIN}, exact only below {@link CountConfig#getEstimateExactBelow()}.
+         */
+        ESTIMATED
+    }
+
+    public static final String RECIPES = "recipes";
+    public static final String REVIEWS = "reviews";
+    public static final String USERS = "users";
+    public static final String USER_FOLLOWS = "user_follows";
+
+    private static final Pattern PLAN_ROWS = Pattern.compile("\"Plan Rows\":\\s*([0-9.eE+]+)");
+
+    private static final class Key {
+        private final String sql;
+        private final String params;
+        private final Set<String> tables;
+
+        private Key(String sql, List<Object> params, String[] tables) {
+            this.sql = sql;
+            this.params = Arrays.deepToString(params.toArray());
+            this.tables = Set.of(tables);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && sql.equals(((Key) o).sql) && params.equals(((Key) o).params);
+        }
+
+        @Override
+        public int hashCode() {
+            return sql.hashCode() * 31 + params.hashCode();
+        }
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private CountConfig config;
+
+    private Cache<Key, Long> cache;
+
+    /**
+     * Bumped by every invalidation; a count is only cached if no write happened while it was computed.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(config.getCacheMaximumSize())
+                .expireAfterWrite(config.getCacheExpireAfterWrite())
+                .build();
+    }
+
+    /**
+     * Fetches one page of {@code SELECT <select> <from> ORDER BY <orderBy>} and counts the rows of {@code <from>}.
+     *
+     * @param from        {@code FROM ... WHERE ...}, shared by the page and the count
+     * @param params      parameters of {@code from}
+     * @param orderParams parameters of {@code orderBy}
+     * @param tables      tables read by {@code from}, whose writes invalidate cached counts
+     */
+    public <T> PageResult<T> query(String select, String from, List<Object> params, String orderBy,
+                                   List<Object> orderParams, RowMapper<T> mapper, int page, int size,
+                                   String... tables) {
+        Mode mode = config.getMode();
+        long offset = (long) (page - 1) * size;
+        List<Object> queryParams = new ArrayList<>(params);
+        queryParams.addAll(orderParams);
+        queryParams.add(size);
+        queryParams.add(offset);
+
+        if (mode == Mode.WINDOW) {
+            long[] total = {-1};
+            List<T> items = jdbcTemplate.query(
+                    "SELECT " + select + ", COUNT(*) OVER () AS TotalCount " + from + "ORDER BY " + orderBy + " LIMIT ? OFFSET ?",
+                    (rs, rowNum) -> {
+                        if (rowNum == 0) {
+                            total[0] = rs.getLong("TotalCount");
+                        }
+                        return mapper.mapRow(rs, rowNum);
+                    }, queryParams.toArray());
+            if (total[0] < 0) {
+                // 页码超出范围时窗口函数没有可读的行
+                total[0] = page == 1 ? 0 : count(from, params);
+            }
+            return new PageResult<>(items, page, size, total[0]);
+        }
+
+        List<T> items = jdbcTemplate.query(
+                "SELECT " + select + " " + from + "ORDER BY " + orderBy + " LIMIT ? OFFSET ?",
+                mapper, queryParams.toArray());
+        long total;
+        if (!items.isEmpty() && items.size() < size || page == 1 && items.isEmpty()) {
+            // 最后一页未填满时，总数可以直接算出
+            total = offset + items.size();
+        } else if (mode == Mode.CACHED) {
+            total = cachedCount(from, params, tables);
+        } else if (mode == Mode.ESTIMATED) {
+            total = estimatedCount(from, params);
+        } else {
+            total = count(from, params);
+        }
+        return new PageResult<>(items, page, size, total);
+    }
+
+    /**
+     * Drops the cached counts that read any of {@code tables}, now and again once the current transaction completes.
+     */
+    public void invalidate(String... tables) {
+        drop(tables);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    drop(tables);
+                }
+            });
+        }
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    private void drop(String[] tables) {
+        if (config.getMode() != Mode.CACHED) {
+            return;
+        }
+        generation.incrementAndGet();
+        List<String> written = Arrays.asList(tables);
+        cache.asMap().keySet().removeIf(key -> !Collections.disjoint(key.tables, written));
+    }
+
+    private long count(String from, List<Object> params) {
+        Long total = jdbcTemplate.queryForObject("SELECT COUNT(*) " + from, Long.class, params.toArray());
+        return total != null ? total : 0;
+    }
+
+    private long cachedCount(String from, List<Object> params, String[] tables) {
+        Key key = new Key(from, params, tables);
+        Long cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        long before = generation.get();
+        long total = count(from, params);
+        if (generation.get() == before) {
+            cache.put(key, total);
+        }
+        return total;
+    }
+
+    private long estimatedCount(String from, List<Object> params) {
+        String plan = jdbcTemplate.queryForObject("EXPLAIN (FORMAT JSON) SELECT 1 " + from, String.class, params.toArray());
+        Matcher matcher = plan != null ? PLAN_ROWS.matcher(plan) : null;
+        if (matcher == null || !matcher.find()) {
+            log.warn("No row estimate in plan, counting exactly");
+            return count(from, params);
+        }
+        long estimate = (long) Double.parseDouble(matcher.group(1));
+        return estimate < config.getEstimateExactBelow() ? count(from, params) : estimate;
+    }
+}
@@ -4,11 +4,13 @@ import io.sustc.dto.*;
 import io.sustc.service.RecipeService;
 import io.sustc.service.UserService;
 import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 import java.sql.*;
 import java.time.Duration;
@@ -18,12 +20,49 @@ import java.util.*;
 @Service
 @Slf4j
 public class RecipeServiceImpl implements RecipeService {
+    /**
+     * Ingredients of {@code r} as one array column, read by {@link RecipeRowMapper}, so a page of recipes
+     * is fetched in a single query instead of one extra query per row.
+     */
+    // 排序由 RecipeRecord#setRecipeIngredientParts 按 compareToIgnoreCase 完成，不依赖数据库的排序规则
+    private static final String INGREDIENT_PARTS = "ARRAY(SELECT ri.IngredientPart FROM recipe_ingredients ri " +
+            "WHERE ri.RecipeId = r.RecipeId) AS IngredientParts";
+
+    private static final String RECIPE_DOCUMENT = ImportSchema.recipeDocument("r");
+
+    private static final RowMapper<RecipeRecord> RECIPE_ROW_MAPPER = new RecipeRowMapper();
+
+    /**
+     * Sort options of {@link #searchRecipes}, shared by the page and the cursor variant.
+     */
+    private static final Map<String, Keyset> RECIPE_SORTS = Map.of(
+            "rating_desc", new Keyset("rating_desc", "r.AggregatedRating", "float8", "r.RecipeId", true, false),
+            "rating_asc", new Keyset("rating_asc", "r.AggregatedRating", "float8", "r.RecipeId", false, false),
+            "date_desc", new Keyset("date_desc", "r.DatePublished", "timestamp", "r.RecipeId", true, true),
+            "date_asc", new Keyset("date_asc", "r.DatePublished", "timestamp", "r.RecipeId", false, false),
+            "calories_asc", new Keyset("calories_asc", "r.Calories", "numeric", "r.RecipeId", false, false),
+            "calories_desc", new Keyset("calories_desc", "r.Calories", "numeric", "r.RecipeId", true, false));
+
+    private static final Keyset DEFAULT_RECIPE_SORT = Keyset.byId("id_desc", "r.RecipeId", true);
+
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private IdAllocator idAllocator;
+
+    @Autowired
+    private SearchIndex searchIndex;
+
+    @Autowired
+    private PageCounter pageCounter;
+
+    @Autowired
+    private SearchCache searchCache;
+
     @Override
     public String getNameFromID(long id) {
         try {
@@ -65,12 +104,13 @@ public class RecipeServiceImpl implements RecipeService {
                 "r.SugarContent, " +
                 "r.ProteinContent, " +
                 "r.RecipeServings, " +
-                "r.RecipeYield " +
+                "r.RecipeYield, " +
+                INGREDIENT_PARTS + " " +
                 "FROM recipes r " +
                 "JOIN users u ON r.AuthorId = u.AuthorId " +
                 "WHERE r.RecipeId = ? AND u.IsDeleted = FALSE";
         try {
-            return jdbcTemplate.queryForObject(sql, new RecipeRowMapper(jdbcTemplate), recipeId);
+            return jdbcTemplate.queryForObject(sql, RECIPE_ROW_MAPPER, recipeId);
         } catch (EmptyResultDataAccessException e) {
 //            log.warn("Recipe not found with id: {}", recipeId);
             return null;
@@ -84,96 +124,116 @@ public class RecipeServiceImpl implements RecipeService {
             throw new IllegalArgumentException("Invalid page or size");
         }
 
-        StringBuilder sql = new StringBuilder(
-                "SELECT r.*, u.AuthorName FROM recipes r " +
-                        "JOIN users u ON r.AuthorId = u.AuthorId " +
-                        "WHERE (u.IsDeleted IS NULL OR u.IsDeleted = FALSE) AND 1=1 "
-        );
-
-        List<Object> params = new ArrayList<>();
-
-        if (StringUtils.hasText(keyword)) {
-            sql.append("AND (r.Name ILIKE ? OR r.Description ILIKE ?) ");
-            String likeParam = "%" + keyword + "%";
-            params.add(likeParam);
-            params.add(likeParam);
-        }
-
-        if (StringUtils.hasText(category)) {
-            sql.append("AND r.RecipeCategory = ? ");
-            params.add(category);
+        boolean relevance = "relevance".equals(sort) && StringUtils.hasText(keyword);
+        if (!searchCache.isEnabled()) {
+            return search(keyword, category, minRating, page, size, sort, relevance);
         }
+        return searchCache.get(StringUtils.hasText(keyword) ? keyword : null,
+                StringUtils.hasText(category) ? category : null, minRating, page, size,
+                relevance ? "relevance" : recipeSort(sort).getName(),
+                () -> search(keyword, category, minRating, page, size, sort, relevance));
+    }
 
-        if (minRating != null) {
-            sql.append("AND r.AggregatedRating >= ? ");
-            params.add(minRating);
+    private PageResult<RecipeRecord> search(String keyword, String category, Double minRating,
+                                            int page, int size, String sort, boolean relevance) {
+        // 查询与计数共用同一组过滤条件
+        List<Object> params = new ArrayList<>();
+        StringBuilder where = searchFilter(keyword, category, minRating, relevance, params);
+        if (where == null) {
+            return new PageResult<>(new ArrayList<>(), page, size, 0);
         }
 
-        sql.append("ORDER BY ");
-        if ("rating_desc".equals(sort)) {
-            sql.append("r.AggregatedRating DESC NULLS LAST, r.RecipeId DESC ");
-        } else if ("rating_asc".equals(sort)) {
-            sql.append("r.AggregatedRating ASC NULLS LAST, r.RecipeId ASC ");
-        } else if ("date_desc".equals(sort)) {
-            sql.append("r.DatePublished DESC, r.RecipeId DESC ");
-        } else if ("date_asc".equals(sort)) {
-            sql.append("r.DatePublished ASC, r.RecipeId ASC ");
-        } else if ("calories_asc".equals(sort)) {
-            sql.append("r.Calories ASC NULLS LAST, r.RecipeId ASC ");
-        } else if ("calories_desc".equals(sort)) {
-            sql.append("r.Calories DESC NULLS LAST, r.RecipeId DESC ");
+        String orderBy;
+        List<Object> orderParams = new ArrayList<>();
+        if (relevance) {
+            orderBy = "ts_rank(" + RECIPE_DOCUMENT + ", plainto_tsquery('english', ?)) DESC, r.RecipeId DESC";
+            orderParams.add(keyword);
         } else {
-            sql.append("r.RecipeId DESC ");
+            orderBy = recipeSort(sort).orderBy();
         }
 
-        // 分页
-        int offset = (page - 1) * size;
-        sql.append("LIMIT ? OFFSET ?");
-        params.add(size);
-        params.add(offset);
-
-        List<RecipeRecord> records = jdbcTemplate.query(sql.toString(), new RecipeRowMapper(jdbcTemplate), params.toArray());
+        return pageCounter.query("r.*, u.AuthorName, " + INGREDIENT_PARTS, where.toString(), params,
+                orderBy, orderParams, RECIPE_ROW_MAPPER, page, size, PageCounter.RECIPES, PageCounter.USERS);
+    }
 
-        for (RecipeRecord record : records) {
-            String ingredientSql = "SELECT IngredientPart FROM recipe_ingredients WHERE RecipeId = ? ";
-            List<String> ingredients = jdbcTemplate.query(
-                    ingredientSql,
-                    (rs, rowNum) -> rs.getString("IngredientPart"),
-                    record.getRecipeId()
-            );
-            record.setRecipeIngredientParts(ingredients.toArray(new String[0]));
+    @Override
+    public CursorPage<RecipeRecord> searchRecipesAfter(String keyword, String category, Double minRating,
+                                                       String cursor, int size, String sort) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Invalid size");
+        }
+        if ("relevance".equals(sort)) {
+            throw new IllegalArgumentException("Sort relevance does not support cursors");
         }
+        Keyset keyset = recipeSort(sort);
+        List<Object> params = new ArrayList<>();
+        StringBuilder where = searchFilter(keyword, category, minRating, false, params);
+        if (where == null) {
+            return new CursorPage<>(new ArrayList<>(), size, null);
+        }
+        keyset.appendAfter(where, params, cursor);
+        String sql = "SELECT r.*, u.AuthorName, " + INGREDIENT_PARTS + ", " + keyset.select() + " " + where +
+                "ORDER BY " + keyset.orderBy();
+        return keyset.query(jdbcTemplate, sql, RECIPE_ROW_MAPPER, params, size);
+    }
 
-        StringBuilder countSql = new StringBuilder(
-                "SELECT COUNT(*) FROM recipes r " +
+    /**
+     * {@code FROM ... WHERE ...} of a recipe search, or {@code null} if the search index proves there is no match.
+     */
+    private StringBuilder searchFilter(String keyword, String category, Double minRating, boolean relevance,
+                                       List<Object> params) {
+        StringBuilder where = new StringBuilder(
+                "FROM recipes r " +
                         "JOIN users u ON r.AuthorId = u.AuthorId " +
                         "WHERE (u.IsDeleted IS NULL OR u.IsDeleted = FALSE) AND 1=1 "
         );
 
-        List<Object> countParams = new ArrayList<>();
-
+        if (searchIndex.isEnabled() && !relevance) {
+            // 倒排索引先求出候选集合，数据库只需在这些食谱中复核过滤条件
+            RoaringBitmap candidates = searchIndex.find(StringUtils.hasText(keyword) ? keyword : null,
+                    StringUtils.hasText(category) ? category : null, minRating);
+            if (candidates != null && candidates.isEmpty()) {
+                return null;
+            }
+            if (candidates != null && candidates.getCardinality() <= searchIndex.getMaxCandidates()) {
+                where.append("AND r.RecipeId = ANY(?) ");
+                params.add(candidates.stream().asLongStream().toArray());
+            }
+        }
         if (StringUtils.hasText(keyword)) {
-            countSql.append("AND (r.Name ILIKE ? OR r.Description ILIKE ?) ");
-            countParams.add("%" + keyword + "%");
-            countParams.add("%" + keyword + "%");
+            String likeParam = "%" + keyword + "%";
+            if (relevance) {
+                // 按相关度排序时，额外包含全文检索（词干）命中的食谱
+                where.append("AND (r.Name ILIKE ? OR r.Description ILIKE ? OR ")
+                        .append(RECIPE_DOCUMENT).append(" @@ plainto_tsquery('english', ?)) ");
+                params.add(likeParam);
+                params.add(likeParam);
+                params.add(keyword);
+            } else {
+                where.append("AND (r.Name ILIKE ? OR r.Description ILIKE ?) ");
+                params.add(likeParam);
+                params.add(likeParam);
+            }
         }
 
         if (StringUtils.hasText(category)) {
-            countSql.append("AND r.RecipeCategory = ? ");
-            countParams.add(category);
+            where.append("AND r.RecipeCategory = ? ");
+            params.add(category);
         }
 
         if (minRating != null) {
-            countSql.append("AND r.AggregatedRating >= ? ");
-            countParams.add(minRating);
+            where.append("AND r.AggregatedRating >= ? ");
+            params.add(minRating);
         }
+        return where;
+    }
 
-        long total = jdbcTemplate.queryForObject(countSql.toString(), Long.class, countParams.toArray());
-
-        return new PageResult<>(records, page, size, total);
+    private static Keyset recipeSort(String sort) {
+        return sort != null ? RECIPE_SORTS.getOrDefault(sort, DEFAULT_RECIPE_SORT) : DEFAULT_RECIPE_SORT;
     }
 
     @Override
+    @Transactional
     public long createRecipe(RecipeRecord dto, AuthInfo auth) {
         long userId = userService.login(auth);
         if (userId == -1) {
@@ -184,18 +244,18 @@ public class RecipeServiceImpl implements RecipeService {
             throw new IllegalArgumentException("Recipe name cannot be empty");
         }
 
-        String maxIdSql = "SELECT COALESCE(MAX(RecipeId), 0) FROM recipes";
-        Long maxId = jdbcTemplate.queryForObject(maxIdSql, Long.class);
-        long recipeId = maxId + 1;
+        long recipeId = idAllocator.next(IdAllocator.Kind.RECIPE);
 
         String sql = "INSERT INTO recipes (RecipeId, Name, AuthorId, CookTime, PrepTime, TotalTime, " +
                 "DatePublished, Description, RecipeCategory, AggregatedRating, ReviewCount, " +
                 "Calories, FatContent, SaturatedFatContent, CholesterolContent, SodiumContent, " +
                 "CarbohydrateContent, FiberContent, SugarContent, ProteinContent, " +
                 "RecipeServings, RecipeYield) " +
-                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+                "RETURNING AggregatedRating";
 
-        jdbcTemplate.update(sql,
+        // 索引与缓存使用数据库实际存储的评分（float8），而不是 DTO 中的 float
+        Double rating = jdbcTemplate.queryForObject(sql, Double.class,
                 recipeId,
                 dto.getName(),
                 userId,
@@ -230,10 +290,15 @@ public class RecipeServiceImpl implements RecipeService {
             }
         }
 
+        // 缓存与索引在事务结束时再同步一次，回滚时 id 由 IdAllocator 归还
+        pageCounter.invalidate(PageCounter.RECIPES);
+        searchCache.recipeAdded(recipeId, dto.getName(), dto.getDescription(), dto.getRecipeCategory(), rating);
+        searchIndex.addRecipe(recipeId, dto.getName(), dto.getDescription(), dto.getRecipeCategory(), rating, userId);
         return recipeId;
     }
 
     @Override
+    @Transactional
     public void deleteRecipe(long recipeId, AuthInfo auth) {
         long userId = userService.login(auth);
         if (userId == -1) {
@@ -249,10 +314,14 @@ public class RecipeServiceImpl implements RecipeService {
         if (isAuthor == null || !isAuthor) {
             throw new SecurityException("Only the author can delete the recipe");
         }
+        // 需在删除前读取该行；事务结束后会再次清除受影响的页
+        searchCache.recipeRemoved(recipeId);
         jdbcTemplate.update("DELETE FROM review_likes WHERE ReviewId IN (SELECT ReviewId FROM reviews WHERE RecipeId = ?)", recipeId);
         jdbcTemplate.update("DELETE FROM reviews WHERE RecipeId = ?", recipeId);
         jdbcTemplate.update("DELETE FROM recipe_ingredients WHERE RecipeId = ?", recipeId);
         jdbcTemplate.update("DELETE FROM recipes WHERE RecipeId = ?", recipeId);
+        pageCounter.invalidate(PageCounter.RECIPES, PageCounter.REVIEWS);
+        searchIndex.removeRecipe(recipeId);
     }
 
     @Override
@@ -313,6 +382,7 @@ public class RecipeServiceImpl implements RecipeService {
         params.add(recipeId);
 
         jdbcTemplate.update(sql.toString(), params.toArray());
+        searchCache.recipeUpdated(recipeId, false);
     }
 
     @Override
@@ -378,12 +448,6 @@ public class RecipeServiceImpl implements RecipeService {
     }
 
     private static class RecipeRowMapper implements RowMapper<RecipeRecord> {
-        private JdbcTemplate jdbcTemplate;
-
-        public RecipeRowMapper(JdbcTemplate jdbcTemplate) {
-            this.jdbcTemplate = jdbcTemplate;
-        }
-
         @Override
         public RecipeRecord mapRow(ResultSet rs, int rowNum) throws SQLException {
             RecipeRecord record = new RecipeRecord();
@@ -410,16 +474,8 @@ public class RecipeServiceImpl implements RecipeService {
             record.setProteinContent(rs.getFloat("ProteinContent"));
             record.setRecipeServings(rs.getInt("RecipeServings"));
             record.setRecipeYield(rs.getString("RecipeYield"));
-            List<String> ingredients = this.jdbcTemplate.query(
-                    "SELECT IngredientPart FROM recipe_ingredients WHERE RecipeId = ?",
-                    (rs1, rowNum1) -> rs1.getString("IngredientPart"),
-                    record.getRecipeId()
-            );
-            if (ingredients != null && !ingredients.isEmpty()) {
-                record.setRecipeIngredientParts(ingredients.toArray(new String[0]));
-            } else {
-                record.setRecipeIngredientParts(new String[0]);
-            }
+            // setter 按 compareToIgnoreCase 排序
+            record.setRecipeIngredientParts(SqlArrays.toStringArray(rs.getArray("IngredientParts")));
 
             return record;
         }
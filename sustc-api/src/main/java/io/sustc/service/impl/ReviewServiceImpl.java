@@ -1,6 +1,7 @@
 package io.sustc.service.impl;
 
 import io.sustc.dto.AuthInfo;
+import io.sustc.dto.CursorPage;
 import io.sustc.dto.PageResult;
 import io.sustc.dto.RecipeRecord;
 import io.sustc.dto.ReviewRecord;
@@ -9,15 +10,15 @@ import io.sustc.service.ReviewService;
 import io.sustc.service.UserService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import java.math.BigDecimal;
 import java.sql.Timestamp;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -34,6 +35,24 @@ public class ReviewServiceImpl implements ReviewService {
     @Autowired
     private RecipeService recipeService;
 
+    @Autowired
+    private IdAllocator idAllocator;
+
+    @Autowired
+    private LikeBuffer likeBuffer;
+
+    @Autowired
+    private SearchIndex searchIndex;
+
+    @Autowired
+    private PageCounter pageCounter;
+
+    @Autowired
+    private SearchCache searchCache;
+
+    private static final String ACTIVE_AUTHOR =
+            "EXISTS (SELECT 1 FROM users u WHERE u.AuthorId = r.AuthorId AND u.IsDeleted = FALSE)";
+
     @Override
     @Transactional
     public long addReview(AuthInfo auth, long recipeId, int rating, String review) {
@@ -48,16 +67,15 @@ public class ReviewServiceImpl implements ReviewService {
         if (rating < 1 || rating > 5) {
             throw new IllegalArgumentException("Rating must be between 1 and 5");
         }
-        String maxIdSql = "SELECT COALESCE(MAX(ReviewId), 0) FROM reviews";
-        Long maxId = jdbcTemplate.queryForObject(maxIdSql, Long.class);
-        long reviewId = maxId + 1;
+        // 回滚时由 IdAllocator 归还 id
+        long reviewId = idAllocator.next(IdAllocator.Kind.REVIEW);
 
         String sql = "INSERT INTO reviews (ReviewId, RecipeId, AuthorId, Rating, Review, DateSubmitted, DateModified) " +
                 "VALUES (?, ?, ?, ?, ?, ?, ?)";
         Timestamp now = new Timestamp(System.currentTimeMillis());
         jdbcTemplate.update(sql, reviewId, recipeId, userId, rating, review, now, now);
 
-        refreshRecipeAggregatedRating(recipeId);
+        applyRatingDelta(recipeId, rating, 1);
 
         return reviewId;
     }
@@ -80,19 +98,15 @@ public class ReviewServiceImpl implements ReviewService {
         if (userId == -1) {
             throw new SecurityException("Invalid or inactive user");
         }
+        // 锁定该评论行，保证旧评分与本次更新之间不被并发修改
         String reviewCheckSql =
-                "SELECT AuthorId FROM reviews WHERE ReviewId = ? AND RecipeId = ?";
+                "SELECT AuthorId, Rating FROM reviews WHERE ReviewId = ? AND RecipeId = ? FOR UPDATE";
 
-        Long authorId;
-        try {
-            authorId = jdbcTemplate.queryForObject(reviewCheckSql, Long.class, reviewId, recipeId);
-        } catch (EmptyResultDataAccessException e) {
+        long[] existing = queryAuthorAndRating(reviewCheckSql, reviewId, recipeId);
+        if (existing == null) {
             throw new IllegalArgumentException("Review does not exist for this recipe");
         }
-
-        if (authorId == null) {
-            throw new IllegalArgumentException("Review does not exist");
-        }
+        long authorId = existing[0];
 
         if (authorId != userId) {
             throw new SecurityException("Only the author can edit the review");
@@ -106,7 +120,7 @@ public class ReviewServiceImpl implements ReviewService {
         if (updated == 0) {
             throw new SecurityException("Failed to update review");
         }
-        refreshRecipeAggregatedRating(recipeId);
+        applyRatingDelta(recipeId, rating - existing[1], 0);
     }
 
     @Override
@@ -120,26 +134,18 @@ public class ReviewServiceImpl implements ReviewService {
             throw new SecurityException("Invalid or inactive user");
         }
 
-        String sql = "SELECT AuthorId FROM reviews WHERE ReviewId = ? AND RecipeId = ?";
-        Long authorId;
-        try {
-            authorId = jdbcTemplate.queryForObject(sql, Long.class, reviewId, recipeId);
-        } catch (EmptyResultDataAccessException e) {
+        String sql = "SELECT AuthorId, Rating FROM reviews WHERE ReviewId = ? AND RecipeId = ? FOR UPDATE";
+        long[] existing = queryAuthorAndRating(sql, reviewId, recipeId);
+        if (existing == null) {
             throw new IllegalArgumentException("Review does not exist for this recipe");
         }
-
-        if (authorId == null || authorId != userId) {
-            String message = authorId == null ?
-                    "Review does not exist for this recipe" :
-                    "Only the author can delete the review";
-            throw authorId == null ?
-                    new IllegalArgumentException(message) :
-                    new SecurityException(message);
+        if (existing[0] != userId) {
+            throw new SecurityException("Only the author can delete the review");
         }
 
         jdbcTemplate.update("DELETE FROM review_likes WHERE ReviewId = ?", reviewId);
         jdbcTemplate.update("DELETE FROM reviews WHERE ReviewId = ? AND RecipeId = ?", reviewId, recipeId);
-        refreshRecipeAggregatedRating(recipeId);
+        applyRatingDelta(recipeId, -existing[1], -1);
     }
 
     private boolean recipeExists(long recipeId) {
@@ -158,33 +164,31 @@ public class ReviewServiceImpl implements ReviewService {
             throw new SecurityException("Invalid or inactive user");
         }
 
-        Boolean reviewExists = jdbcTemplate.queryForObject(
-                "SELECT EXISTS (SELECT 1 FROM reviews WHERE ReviewId = ?)",
-                Boolean.class,
-                reviewId
-        );
-        if (reviewExists == null || !reviewExists) {
-            throw new IllegalArgumentException("Review does not exist");
-        }
-
-        Long reviewAuthor = jdbcTemplate.queryForObject(
+        List<Long> reviewAuthor = jdbcTemplate.queryForList(
                 "SELECT AuthorId FROM reviews WHERE ReviewId = ?",
                 Long.class,
                 reviewId
         );
-        if (reviewAuthor != null && reviewAuthor.equals(userId)) {
+        if (reviewAuthor.isEmpty()) {
+            throw new IllegalArgumentException("Review does not exist");
+        }
+        if (reviewAuthor.get(0) == userId) {
             throw new SecurityException("Cannot like your own review");
         }
 
-        String sql = "INSERT INTO review_likes (ReviewId, AuthorId) VALUES (?, ?) ON CONFLICT DO NOTHING";
-        jdbcTemplate.update(sql, reviewId, userId);
+        if (likeBuffer.isEnabled()) {
+            return likeBuffer.apply(reviewId, userId, true, () -> loadLikeState(reviewId, userId));
+        }
 
-        // 查询总点赞数
-        return jdbcTemplate.queryForObject(
-                "SELECT COUNT(*) FROM review_likes WHERE ReviewId = ?",
-                Long.class,
-                reviewId
-        );
+        // 插入点赞并在同一条语句中更新、返回点赞数
+        String sql = "WITH added AS (" +
+                "    INSERT INTO review_likes (ReviewId, AuthorId) VALUES (?, ?) ON CONFLICT DO NOTHING " +
+                "    RETURNING ReviewId), " +
+                "counted AS (" +
+                "    UPDATE reviews r SET LikeCount = r.LikeCount + 1 FROM added " +
+                "    WHERE r.ReviewId = added.ReviewId RETURNING r.LikeCount) " +
+                "SELECT COALESCE((SELECT LikeCount FROM counted), (SELECT LikeCount FROM reviews WHERE ReviewId = ?))";
+        return jdbcTemplate.queryForObject(sql, Long.class, reviewId, userId, reviewId);
     }
 
     @Override
@@ -204,14 +208,17 @@ public class ReviewServiceImpl implements ReviewService {
             throw new IllegalArgumentException("Review does not exist");
         }
 
-        String sql = "DELETE FROM review_likes WHERE ReviewId = ? AND AuthorId = ?";
-        jdbcTemplate.update(sql, reviewId, userId);
+        if (likeBuffer.isEnabled()) {
+            return likeBuffer.apply(reviewId, userId, false, () -> loadLikeState(reviewId, userId));
+        }
 
-        return jdbcTemplate.queryForObject(
-                "SELECT COUNT(*) FROM review_likes WHERE ReviewId = ?",
-                Long.class,
-                reviewId
-        );
+        String sql = "WITH removed AS (" +
+                "    DELETE FROM review_likes WHERE ReviewId = ? AND AuthorId = ? RETURNING ReviewId), " +
+                "counted AS (" +
+                "    UPDATE reviews r SET LikeCount = GREATEST(r.LikeCount - 1, 0) FROM removed " +
+                "    WHERE r.ReviewId = removed.ReviewId RETURNING r.LikeCount) " +
+                "SELECT COALESCE((SELECT LikeCount FROM counted), (SELECT LikeCount FROM reviews WHERE ReviewId = ?))";
+        return jdbcTemplate.queryForObject(sql, Long.class, reviewId, userId, reviewId);
     }
 
     @Override
@@ -220,84 +227,117 @@ public class ReviewServiceImpl implements ReviewService {
             throw new IllegalArgumentException("Invalid page or size");
         }
 
-        String sortClause = "r.DateModified DESC";
-        if ("likes_desc".equals(sort)) {
-            sortClause = "LikeCount DESC";
-        } else if ("date_desc".equals(sort)) {
-            sortClause = "r.DateSubmitted DESC";
-        } else if ("date_asc".equals(sort)) {
-            sortClause = "r.DateSubmitted ASC";
-        } else if ("rating_desc".equals(sort)) {
-            sortClause = "r.Rating DESC";
-        } else if ("rating_asc".equals(sort)) {
-            sortClause = "r.Rating ASC";
-        }
-
-        int offset = (page - 1) * size;
-        String sql = "SELECT r.*, u.AuthorName, COUNT(rl.AuthorId) AS LikeCount " +
-                "FROM reviews r " +
-                "LEFT JOIN review_likes rl ON r.ReviewId = rl.ReviewId " +
-                "JOIN users u ON r.AuthorId = u.AuthorId " +
-                "WHERE r.RecipeId = ? " +
-                "GROUP BY r.ReviewId, u.AuthorName " +
-                "ORDER BY " + sortClause + " " +
-                "LIMIT ? OFFSET ?";
-
-        List<ReviewRecord> records = jdbcTemplate.query(sql, new ReviewRowMapper(jdbcTemplate), recipeId, size, offset);
+        // 点赞数取自 LikeCount 列；点赞用户只为当前页的评论聚合为数组
+        return pageCounter.query("r.*, u.AuthorName, " + REVIEW_LIKES, REVIEW_FILTER, List.<Object>of(recipeId),
+                reviewSort(sort).orderBy(), Collections.emptyList(), REVIEW_ROW_MAPPER, page, size,
+                PageCounter.REVIEWS, PageCounter.USERS);
+    }
 
-        long total = jdbcTemplate.queryForObject(
-                "SELECT COUNT(*) FROM reviews WHERE RecipeId = ?",
-                Long.class,
-                recipeId
-        );
+    @Override
+    public CursorPage<ReviewRecord> listByRecipeAfter(long recipeId, String cursor, int size, String sort) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Invalid size");
+        }
+        Keyset keyset = reviewSort(sort);
+        StringBuilder where = new StringBuilder(REVIEW_FILTER);
+        List<Object> params = new ArrayList<>();
+        params.add(recipeId);
+        keyset.appendAfter(where, params, cursor);
+        String sql = "SELECT r.*, u.AuthorName, " + REVIEW_LIKES + ", " + keyset.select() + " " + where +
+                "ORDER BY " + keyset.orderBy();
+        return keyset.query(jdbcTemplate, sql, REVIEW_ROW_MAPPER, params, size);
+    }
 
-        return new PageResult<>(records, page, size, total);
+    private static Keyset reviewSort(String sort) {
+        return sort != null ? REVIEW_SORTS.getOrDefault(sort, DEFAULT_REVIEW_SORT) : DEFAULT_REVIEW_SORT;
     }
 
     @Override
     @Transactional
     public RecipeRecord refreshRecipeAggregatedRating(long recipeId) {
-        RecipeRecord recipe = recipeService.getRecipeById(recipeId);
-        if (recipe == null) {
+        // 按评论表完整重算一次，同时校正 RatingSum / RatingCount
+        List<Double> updated = jdbcTemplate.queryForList("UPDATE recipes r SET " +
+                "RatingSum = t.s, RatingCount = t.c, ReviewCount = t.c, " +
+                "AggregatedRating = " + averageSql("t.s", "t.c") + " " +
+                "FROM (SELECT COALESCE(SUM(Rating), 0) AS s, COUNT(*)::int AS c FROM reviews WHERE RecipeId = ?) t " +
+                "WHERE r.RecipeId = ? AND " + ACTIVE_AUTHOR + " RETURNING r.AggregatedRating",
+                Double.class, recipeId, recipeId);
+        if (updated.isEmpty()) {
+            throw new IllegalArgumentException("Recipe does not exist or is deleted");
+        }
+        pageCounter.invalidate(PageCounter.RECIPES, PageCounter.REVIEWS);
+        searchIndex.updateRating(recipeId, updated.get(0));
+        searchCache.recipeUpdated(recipeId, true);
+        return recipeService.getRecipeById(recipeId);
+    }
+
+    /**
+     * Adds one review's change to the running RatingSum / RatingCount of a recipe and derives
+     * AggregatedRating and ReviewCount from them, without reading the other reviews.
+     */
+    private void applyRatingDelta(long recipeId, long sumDelta, int countDelta) {
+        String sum = "(r.RatingSum + ?)";
+        String count = "(r.RatingCount + ?)";
+        List<Double> updated = jdbcTemplate.queryForList("UPDATE recipes r SET " +
+                        "RatingSum = " + sum + ", RatingCount = " + count + ", ReviewCount = " + count + ", " +
+                        "AggregatedRating = " + averageSql(sum, count) + " " +
+                        "WHERE r.RecipeId = ? AND " + ACTIVE_AUTHOR + " RETURNING r.AggregatedRating",
+                Double.class, sumDelta, countDelta, countDelta, countDelta, sumDelta, countDelta, recipeId);
+        if (updated.isEmpty()) {
             throw new IllegalArgumentException("Recipe does not exist or is deleted");
         }
+        pageCounter.invalidate(PageCounter.RECIPES, PageCounter.REVIEWS);
+        searchIndex.updateRating(recipeId, updated.get(0));
+        searchCache.recipeUpdated(recipeId, true);
+    }
 
-        String sql = "SELECT " +
-                "    AVG(Rating) AS avg_rating, " +
-                "    COUNT(*) AS review_count " +
-                "FROM reviews " +
-                "WHERE RecipeId = ?";
-
-        Map<String, Object> stats = jdbcTemplate.queryForMap(sql, recipeId);
-        BigDecimal avgRatingBD = (BigDecimal) stats.get("avg_rating");
-        Double avgRating = avgRatingBD != null ? avgRatingBD.doubleValue() : 0.0;
-        Long reviewCount = (Long) stats.get("review_count");
-
-        // 更新食谱评分
-        String updateSql = "UPDATE recipes SET " +
-                "AggregatedRating = ?, " +
-                "ReviewCount = ? " +
-                "WHERE RecipeId = ?";
-
-        jdbcTemplate.update(updateSql,
-                avgRating != null ? roundToTwoDecimals(avgRating) : null,
-                reviewCount != null ? reviewCount.intValue() : 0,
-                recipeId
-        );
+    /**
+     * Average rounded to two decimals the way {@link Math#round(double)} does, 0 without reviews.
+     */
+    private static String averageSql(String sum, String count) {
+        return "CASE WHEN " + count + " > 0 THEN FLOOR(" + sum + "::float8 / " + count + " * 100 + 0.5) / 100 ELSE 0 END";
+    }
 
-        return recipeService.getRecipeById(recipeId);
+    /**
+     * Persisted LikeCount of a review and whether {@code userId} likes it, as {@code {count, 0 or 1}}.
+     */
+    private long[] loadLikeState(long reviewId, long userId) {
+        return jdbcTemplate.queryForObject(
+                "SELECT LikeCount, EXISTS (SELECT 1 FROM review_likes WHERE ReviewId = ? AND AuthorId = ?) AS Liked " +
+                        "FROM reviews WHERE ReviewId = ?",
+                (rs, rowNum) -> new long[]{rs.getLong("LikeCount"), rs.getBoolean("Liked") ? 1 : 0},
+                reviewId, userId, reviewId);
     }
 
-    // 工具方法：保留两位小数
-    private Double roundToTwoDecimals(Double value) {
-        return Math.round(value * 100.0) / 100.0;
+    private long[] queryAuthorAndRating(String sql, long reviewId, long recipeId) {
+        List<long[]> rows = jdbcTemplate.query(sql,
+                (rs, rowNum) -> new long[]{rs.getLong("AuthorId"), rs.getLong("Rating")}, reviewId, recipeId);
+        return rows.isEmpty() ? null : rows.get(0);
     }
 
+    private static final RowMapper<ReviewRecord> REVIEW_ROW_MAPPER = new ReviewRowMapper();
+
+    private static final String REVIEW_FILTER = "FROM reviews r " +
+            "JOIN users u ON r.AuthorId = u.AuthorId " +
+            "WHERE r.RecipeId = ? ";
+
+    private static final String REVIEW_LIKES = "ARRAY(SELECT rl.AuthorId FROM review_likes rl " +
+            "WHERE rl.ReviewId = r.ReviewId ORDER BY rl.AuthorId)::text AS Likes";
+
+    /**
+     * Sort options of {@link #listByRecipe}, with ReviewId as tiebreaker so pages never overlap.
+     */
+    private static final Map<String, Keyset> REVIEW_SORTS = Map.of(
+            "likes_desc", new Keyset("likes_desc", "r.LikeCount", "integer", "r.ReviewId", true, true),
+            "date_desc", new Keyset("date_desc", "r.DateSubmitted", "timestamp", "r.ReviewId", true, true),
+            "date_asc", new Keyset("date_asc", "r.DateSubmitted", "timestamp", "r.ReviewId", false, false),
+            "rating_desc", new Keyset("rating_desc", "r.Rating", "integer", "r.ReviewId", true, true),
+            "rating_asc", new Keyset("rating_asc", "r.Rating", "integer", "r.ReviewId", false, false));
+
+    private static final Keyset DEFAULT_REVIEW_SORT =
+            new Keyset("modified_desc", "r.DateModified", "timestamp", "r.ReviewId", true, true);
+
     private static class ReviewRowMapper implements RowMapper<ReviewRecord> {
-        private JdbcTemplate jdbcTemplate;
-        public ReviewRowMapper(JdbcTemplate jdbcTemplate) {
-            this.jdbcTemplate = jdbcTemplate;
-        }
         @Override
         public ReviewRecord mapRow(ResultSet rs, int rowNum) throws SQLException {
             ReviewRecord record = new ReviewRecord();
@@ -309,13 +349,7 @@ public class ReviewServiceImpl implements ReviewService {
             record.setReview(rs.getString("Review"));
             record.setDateSubmitted(rs.getTimestamp("DateSubmitted"));
             record.setDateModified(rs.getTimestamp("DateModified"));
-
-            List<Long> likeUserIds = jdbcTemplate.query(
-                    "SELECT AuthorId FROM review_likes WHERE ReviewId = ?",
-                    (rs1, rowNum1) -> rs1.getLong("AuthorId"),
-                    record.getReviewId()
-            );
-            record.setLikeUsers(likeUserIds);
+            record.setLikes(SqlArrays.toLongArray(rs.getString("Likes")));
             return record;
         }
     }
@@ -0,0 +1,380 @@
+package io.sustc.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.sustc.dto.CacheReport;
+import io.sustc.dto.PageResult;
+import io.sustc.dto.RecipeRecord;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Pages returned by {@code RecipeService#searchRecipes}, keyed by the normalized arguments and bounded by their
+ * approximate size in memory.
+ * <p>
+ * Writes evict only the pages they can change: a page is dropped if it shows the written recipe, or if the recipe
+ * passes (or passed) the page's keyword, category and rating filters so the total or the order may differ.
+ * A small sample of hits is checked against the database; {@link #getStaleReads()} counts the ones that differed.
+ */
+@Component
+@Slf4j
+public class SearchCache {
+
+    /**
+     * Normalized arguments of one search: empty filters are {@code null}, the keyword is lower-cased
+     * (the match is case-insensitive) and the sort is the one actually applied.
+     */
+    private static final class Key {
+        private final String keyword;
+        private final String category;
+        private final Double minRating;
+        private final int page;
+        private final int size;
+        private final String sort;
+
+        private Key(String keyword, String category, Double minRating, int page, int size, String sort) {
+            this.keyword = keyword;
+            this.category = category;
+            this.minRating = minRating;
+            this.page = page;
+            this.size = size;
+            this.sort = sort;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return page == key.page && size == key.size && Objects.equals(keyword, key.keyword)
+                    && Objects.equals(category, key.category) && Objects.equals(minRating, key.minRating)
+                    && sort.equals(key.sort);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(keyword, category, minRating, page, size, sort);
+        }
+    }
+
+    private static final class Entry {
+        private final PageResult<RecipeRecord> result;
+        private final long[] recipeIds;
+        private final int weight;
+
+        private Entry(PageResult<RecipeRecord> result) {
+            this.result = result;
+            this.recipeIds = result.getItems().stream().mapToLong(RecipeRecord::getRecipeId).toArray();
+            this.weight = weigh(result);
+        }
+
+        private boolean shows(long recipeId) {
+            for (long id : recipeIds) {
+                if (id == recipeId) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * The columns of a recipe the search filters look at.
+     */
+    private static final class Facts {
+        private final long recipeId;
+        private final String name;
+        private final String description;
+        private final String category;
+        private final Double rating;
+
+        private Facts(long recipeId, String name, String description, String category, Double rating) {
+            this.recipeId = recipeId;
+            this.name = name;
+            this.description = description;
+            this.category = category;
+            this.rating = rating;
+        }
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private CacheConfig cacheConfig;
+
+    private Cache<Key, Entry> cache;
+
+    /**
+     * Bumped by every eviction; a page is only cached if nothing was written while it was loaded.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder verifiedReads = new LongAdder();
+
+    private final LongAdder staleReads = new LongAdder();
+
+    @PostConstruct
+    void init() {
+        cache = Caffeine.newBuilder()
+                .maximumWeight(cacheConfig.getSearchMaximumWeight().toBytes())
+                .weigher((Key key, Entry entry) -> entry.weight)
+                .expireAfterWrite(cacheConfig.getSearchExpireAfterWrite())
+                .recordStats()
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return cacheConfig.isSearchEnabled();
+    }
+
+    /**
+     * Returns the cached page of these arguments, or runs {@code search} and caches its result.
+     *
+     * @param sort the sort actually applied, e.g. the default one for unknown values
+     */
+    public PageResult<RecipeRecord> get(String keyword, String category, Double minRating, int page, int size,
+                                        String sort, Supplier<PageResult<RecipeRecord>> search) {
+        Key key = new Key(keyword != null ? keyword.toLowerCase(Locale.ROOT) : null, category, minRating,
+                page, size, sort);
+        Entry entry = cache.getIfPresent(key);
+        if (entry != null) {
+            if (ThreadLocalRandom.current().nextDouble() >= cacheConfig.getSearchVerifyRate()) {
+                return copy(entry.result);
+            }
+            // 抽样复核：与数据库结果不一致即记为一次脏读，并以新结果替换
+            verifiedReads.increment();
+            long before = generation.get();
+            PageResult<RecipeRecord> fresh = search.get();
+            if (fresh.getTotal() == entry.result.getTotal() && fresh.getItems().equals(entry.result.getItems())) {
+                return copy(entry.result);
+            }
+            staleReads.increment();
+            log.debug("Stale search page for keyword={}, category={}, minRating={}, page={}, sort={}",
+                    keyword, category, minRating, page, sort);
+            put(key, fresh, before);
+            return fresh;
+        }
+        long before = generation.get();
+        PageResult<RecipeRecord> result = search.get();
+        put(key, result, before);
+        return copy(result);
+    }
+
+    /**
+     * A recipe was inserted with the given values.
+     */
+    public void recipeAdded(long recipeId, String name, String description, String category, Double rating) {
+        Facts facts = new Facts(recipeId, name, description, category, rating);
+        evict(key -> matches(key, facts) && passesRating(key, facts));
+    }
+
+    /**
+     * A recipe is about to be deleted; must be called before the row is gone.
+     */
+    public void recipeRemoved(long recipeId) {
+        if (!isEnabled()) {
+            return;
+        }
+        List<Facts> facts = load("WHERE RecipeId = ?", recipeId);
+        evict((key, entry) -> entry.shows(recipeId)
+                || facts.stream().anyMatch(f -> matches(key, f) && passesRating(key, f)));
+    }
+
+    /**
+     * Columns of a recipe changed. Unless its rating changed only the pages showing it are affected.
+     */
+    public void recipeUpdated(long recipeId, boolean ratingChanged) {
+        if (!isEnabled()) {
+            return;
+        }
+        if (!ratingChanged) {
+            evict((key, entry) -> entry.shows(recipeId));
+            return;
+        }
+        List<Facts> facts = load("WHERE RecipeId = ?", recipeId);
+        evict((key, entry) -> entry.shows(recipeId)
+                || facts.stream().anyMatch(f -> matches(key, f) && (key.minRating != null || key.sort.startsWith("rating_"))));
+    }
+
+    /**
+     * The recipes of a deleted user disappear from the search.
+     */
+    public void authorRemoved(long authorId) {
+        if (!isEnabled()) {
+            return;
+        }
+        List<Facts> facts = load("WHERE AuthorId = ?", authorId);
+        if (facts.isEmpty()) {
+            return;
+        }
+        evict((key, entry) -> facts.stream().anyMatch(f -> entry.shows(f.recipeId) || matches(key, f) && passesRating(key, f)));
+    }
+
+    public void invalidateAll() {
+        log.debug("Search cache cleared, {}, {} of {} verified reads stale", cache.stats(), staleReads, verifiedReads);
+        generation.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    /**
+     * Hit / miss / eviction counters since startup.
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public CacheReport report() {
+        CacheStats stats = cache.stats();
+        return CacheReport.builder()
+                .name("search")
+                .enabled(isEnabled())
+                .hitCount(stats.hitCount())
+                .missCount(stats.missCount())
+                .hitRate(stats.hitRate())
+                .evictionCount(stats.evictionCount())
+                .size(cache.estimatedSize())
+                .verifiedReads(getVerifiedReads())
+                .staleReads(getStaleReads())
+                .build();
+    }
+
+    /**
+     * Number of cache hits that were also run against the database.
+     */
+    public long getVerifiedReads() {
+        return verifiedReads.sum();
+    }
+
+    /**
+     * Number of verified hits whose cached page differed from the database.
+     */
+    public long getStaleReads() {
+        return staleReads.sum();
+    }
+
+    private interface EntryPredicate {
+        boolean test(Key key, Entry entry);
+    }
+
+    private void evict(Predicate<Key> affected) {
+        evict((key, entry) -> affected.test(key));
+    }
+
+    /**
+     * Drops the affected pages now, and again once the current transaction completes,
+     * so a search running concurrently cannot put back a page from before the write.
+     */
+    private void evict(EntryPredicate affected) {
+        if (!isEnabled()) {
+            return;
+        }
+        drop(affected);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    drop(affected);
+                }
+            });
+        }
+    }
+
+    private void drop(EntryPredicate affected) {
+        generation.incrementAndGet();
+        cache.asMap().entrySet().removeIf(e -> affected.test(e.getKey(), e.getValue()));
+    }
+
+    private void put(Key key, PageResult<RecipeRecord> result, long before) {
+        if (generation.get() == before) {
+            cache.put(key, new Entry(copy(result)));
+        }
+    }
+
+    private List<Facts> load(String where, long id) {
+        return jdbcTemplate.query(
+                "SELECT RecipeId, Name, Description, RecipeCategory, AggregatedRating FROM recipes " + where,
+                (rs, rowNum) -> {
+                    double rating = rs.getDouble("AggregatedRating");
+                    return new Facts(rs.getLong("RecipeId"), rs.getString("Name"), rs.getString("Description"),
+                            rs.getString("RecipeCategory"), rs.wasNull() ? null : rating);
+                }, id);
+    }
+
+    /**
+     * Whether the recipe passes the keyword and category filters of a search.
+     * Relevance searches also match stemmed words, which is not checked here, so they always match.
+     */
+    private static boolean matches(Key key, Facts facts) {
+        if (key.category != null && !key.category.equals(facts.category)) {
+            return false;
+        }
+        if (key.keyword == null || "relevance".equals(key.sort)) {
+            return true;
+        }
+        return contains(facts.name, key.keyword) || contains(facts.description, key.keyword);
+    }
+
+    private static boolean passesRating(Key key, Facts facts) {
+        return key.minRating == null || facts.rating != null && facts.rating >= key.minRating;
+    }
+
+    private static boolean contains(String text, String keyword) {
+        return text != null && text.toLowerCase(Locale.ROOT).contains(keyword);
+    }
+
+    /**
+     * Records are mutable, so the cache keeps its own copies and every caller gets new ones.
+     */
+    private static PageResult<RecipeRecord> copy(PageResult<RecipeRecord> result) {
+        List<RecipeRecord> items = new ArrayList<>(result.getItems().size());
+        for (RecipeRecord r : result.getItems()) {
+            items.add(copy(r));
+        }
+        return new PageResult<>(items, result.getPage(), result.getSize(), result.getTotal());
+    }
+
+    private static RecipeRecord copy(RecipeRecord r) {
+        return r.toBuilder()
+                .datePublished(r.getDatePublished() != null ? (Timestamp) r.getDatePublished().clone() : null)
+                .recipeIngredientParts(r.getRecipeIngredientParts() != null ? r.getRecipeIngredientParts().clone() : null)
+                .build();
+    }
+
+    /**
+     * Rough heap size of a page: object headers and fixed fields plus two bytes per character.
+     */
+    private static int weigh(PageResult<RecipeRecord> result) {
+        long bytes = 128;
+        for (RecipeRecord r : result.getItems()) {
+            bytes += 256 + 2L * (length(r.getName()) + length(r.getDescription()) + length(r.getAuthorName())
+                    + length(r.getRecipeCategory()) + length(r.getRecipeYield()) + length(r.getCookTime())
+                    + length(r.getPrepTime()) + length(r.getTotalTime()));
+            if (r.getRecipeIngredientParts() != null) {
+                for (String part : r.getRecipeIngredientParts()) {
+                    bytes += 48 + 2L * length(part);
+                }
+            }
+        }
+        return (int) Math.min(bytes, Integer.MAX_VALUE);
+    }
+
+    private static int length(String s) {
+        return s != null ? s.length() : 0;
+    }
+}
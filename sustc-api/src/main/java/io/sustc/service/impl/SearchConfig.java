@@ -0,0 +1,26 @@
+package io.sustc.service.impl;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Settings of {@link SearchIndex}, bound from {@code sustc.search.*}.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "sustc.search")
+@Data
+public class SearchConfig {
+
+    /**
+     * Answer the filters of {@code RecipeService#searchRecipes} from an in-memory inverted index.
+     * The index is built in the background at first use and after every import.
+     */
+    private boolean indexEnabled = false;
+
+    /**
+     * Above this many candidate recipes the search falls back to plain SQL, since sending
+     * the ids to the database would cost more than filtering there.
+     */
+    private int maxCandidates = 50_000;
+}
@@ -0,0 +1,350 @@
+package io.sustc.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index over the recipes, enabled by {@link SearchConfig#isIndexEnabled()}.
+ * <p>
+ * Every posting list is a {@link RoaringBitmap} of RecipeIds:
+ * <ul>
+ *     <li>one per lower-cased character trigram of Name and Description, for {@code ILIKE '%keyword%'};</li>
+ *     <li>one per category, and one per 0.1 step of AggregatedRating, for the exact filters;</li>
+ *     <li>one per author, plus the recipes whose author is not deleted.</li>
+ * </ul>
+ * {@link #find} intersects them, so only the surviving ids are sent to the database. A keyword only narrows
+ * the candidates to recipes containing all its trigrams, the database still checks the actual substring.
+ * The index follows the writes of this process; changes made by others are picked up by the next rebuild.
+ */
+@Component
+@Slf4j
+public class SearchIndex {
+
+    private static final int RATING_BUCKETS = 51;
+
+    static final class Snapshot {
+        private final Map<Long, RoaringBitmap> trigrams = new HashMap<>();
+        private final Map<String, RoaringBitmap> categories = new HashMap<>();
+        private final RoaringBitmap[] ratingBuckets = new RoaringBitmap[RATING_BUCKETS];
+        private final Map<Long, RoaringBitmap> authors = new HashMap<>();
+        private final RoaringBitmap active = new RoaringBitmap();
+        private double[] ratings = new double[1024];
+
+        Snapshot() {
+            Arrays.fill(ratings, Double.NaN);
+            for (int i = 0; i < RATING_BUCKETS; i++) {
+                ratingBuckets[i] = new RoaringBitmap();
+            }
+        }
+    }
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private SearchConfig config;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final AtomicBoolean building = new AtomicBoolean();
+
+    /**
+     * Set by every update while a build is running, so the build is repeated with the new data.
+     */
+    private volatile boolean dirty;
+
+    private Snapshot snapshot;
+
+    public boolean isEnabled() {
+        return config.isIndexEnabled();
+    }
+
+    public int getMaxCandidates() {
+        return config.getMaxCandidates();
+    }
+
+    /**
+     * Intersects the posting lists of the given filters.
+     *
+     * @return the candidate RecipeIds, a superset of the matches when a keyword is given, or {@code null}
+     * if the index cannot answer yet or the keyword is too short or contains {@code LIKE} wildcards
+     */
+    public RoaringBitmap find(String keyword, String category, Double minRating) {
+        String pattern = keyword != null && !keyword.isEmpty() ? keyword.toLowerCase(Locale.ROOT) : null;
+        if (pattern != null && (pattern.length() < 3
+                || pattern.indexOf('%') >= 0 || pattern.indexOf('_') >= 0 || pattern.indexOf('\\') >= 0)) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            if (snapshot == null) {
+                rebuildAsync();
+                return null;
+            }
+            List<RoaringBitmap> lists = new ArrayList<>();
+            lists.add(snapshot.active);
+            if (pattern != null) {
+                for (long trigram : trigrams(pattern)) {
+                    RoaringBitmap postings = snapshot.trigrams.get(trigram);
+                    if (postings == null) {
+                        return new RoaringBitmap();
+                    }
+                    lists.add(postings);
+                }
+            }
+            if (category != null) {
+                RoaringBitmap postings = snapshot.categories.get(category);
+                if (postings == null) {
+                    return new RoaringBitmap();
+                }
+                lists.add(postings);
+            }
+            if (minRating != null) {
+                lists.add(ratingAtLeast(snapshot, minRating));
+            }
+            return lists.size() == 1 ? lists.get(0).clone() : FastAggregation.and(lists.iterator());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void addRecipe(long recipeId, String name, String description, String category, Double rating, long authorId) {
+        update(s -> add(s, recipeId, name, description, category, rating, authorId, true));
+    }
+
+    public void removeRecipe(long recipeId) {
+        update(s -> remove(s, (int) recipeId));
+    }
+
+    public void updateRating(long recipeId, Double rating) {
+        update(s -> setRating(s, (int) recipeId, rating));
+    }
+
+    /**
+     * Hides the recipes of a deleted user.
+     */
+    public void removeAuthor(long authorId) {
+        update(s -> {
+            RoaringBitmap recipes = s.authors.get(authorId);
+            if (recipes != null) {
+                s.active.andNot(recipes);
+            }
+        });
+    }
+
+    /**
+     * Forgets the index, e.g. when the tables are dropped. The next search starts a new build.
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            snapshot = null;
+            dirty = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rebuilds the index from the database in a background thread, unless a build is already running.
+     * Searches keep using the previous index, or plain SQL, until it is done.
+     */
+    public void rebuildAsync() {
+        if (!isEnabled() || !building.compareAndSet(false, true)) {
+            dirty = true;
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                do {
+                    dirty = false;
+                    long start = System.currentTimeMillis();
+                    Snapshot built = load();
+                    lock.writeLock().lock();
+                    try {
+                        snapshot = built;
+                    } finally {
+                        lock.writeLock().unlock();
+                    }
+                    log.info("Search index built: {} recipes, {} trigrams, {} ms",
+                            built.active.getCardinality(), built.trigrams.size(), System.currentTimeMillis() - start);
+                } while (dirty);
+            } catch (Exception e) {
+                log.warn("Search index build failed, searches use SQL", e);
+            } finally {
+                building.set(false);
+            }
+        }, "search-index-build");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private Snapshot load() {
+        Snapshot s = new Snapshot();
+        JdbcTemplate streaming = new JdbcTemplate(dataSource);
+        streaming.setFetchSize(10_000);
+        // 游标式读取需要在事务中进行
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> streaming.query(
+                "SELECT r.RecipeId, r.Name, r.Description, r.RecipeCategory, r.AggregatedRating, r.AuthorId, " +
+                        "(u.IsDeleted IS NULL OR u.IsDeleted = FALSE) AS Active " +
+                        "FROM recipes r JOIN users u ON r.AuthorId = u.AuthorId ORDER BY r.RecipeId",
+                rs -> {
+                    double rating = rs.getDouble("AggregatedRating");
+                    add(s, rs.getLong("RecipeId"), rs.getString("Name"), rs.getString("Description"),
+                            rs.getString("RecipeCategory"), rs.wasNull() ? null : rating,
+                            rs.getLong("AuthorId"), rs.getBoolean("Active"));
+                }));
+        for (RoaringBitmap postings : s.trigrams.values()) {
+            postings.runOptimize();
+        }
+        return s;
+    }
+
+    private interface Update {
+        void apply(Snapshot s);
+    }
+
+    /**
+     * Applies a change now, or once the current transaction commits.
+     */
+    private void update(Update change) {
+        if (!isEnabled()) {
+            return;
+        }
+        Runnable apply = () -> {
+            dirty = true;
+            lock.writeLock().lock();
+            try {
+                if (snapshot != null) {
+                    change.apply(snapshot);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply.run();
+                }
+            });
+        } else {
+            apply.run();
+        }
+    }
+
+    static void add(Snapshot s, long recipeId, String name, String description, String category,
+                    Double rating, long authorId, boolean active) {
+        if (recipeId < 0 || recipeId > Integer.MAX_VALUE) {
+            throw new IllegalStateException("RecipeId out of the index range: " + recipeId);
+        }
+        int id = (int) recipeId;
+        Set<Long> grams = new HashSet<>();
+        if (name != null) {
+            grams.addAll(trigrams(name.toLowerCase(Locale.ROOT)));
+        }
+        if (description != null) {
+            grams.addAll(trigrams(description.toLowerCase(Locale.ROOT)));
+        }
+        for (long gram : grams) {
+            s.trigrams.computeIfAbsent(gram, k -> new RoaringBitmap()).add(id);
+        }
+        if (category != null) {
+            s.categories.computeIfAbsent(category, k -> new RoaringBitmap()).add(id);
+        }
+        setRating(s, id, rating);
+        s.authors.computeIfAbsent(authorId, k -> new RoaringBitmap()).add(id);
+        if (active) {
+            s.active.add(id);
+        }
+    }
+
+    private static void remove(Snapshot s, int id) {
+        // 倒排表只需从“有效”集合中移除，其余表中的残留 id 会在求交时被过滤掉
+        s.active.remove(id);
+        if (id < s.ratings.length) {
+            int bucket = bucket(s.ratings[id]);
+            if (bucket >= 0) {
+                s.ratingBuckets[bucket].remove(id);
+            }
+            s.ratings[id] = Double.NaN;
+        }
+    }
+
+    static void setRating(Snapshot s, int id, Double rating) {
+        if (id >= s.ratings.length) {
+            int length = s.ratings.length;
+            s.ratings = Arrays.copyOf(s.ratings, Math.max(id + 1, length * 2));
+            Arrays.fill(s.ratings, length, s.ratings.length, Double.NaN);
+        }
+        int old = bucket(s.ratings[id]);
+        if (old >= 0) {
+            s.ratingBuckets[old].remove(id);
+        }
+        s.ratings[id] = rating == null ? Double.NaN : rating;
+        int bucket = bucket(s.ratings[id]);
+        if (bucket >= 0) {
+            s.ratingBuckets[bucket].add(id);
+        }
+    }
+
+    /**
+     * Recipes with {@code AggregatedRating >= minRating}: whole buckets above the threshold,
+     * plus the members of the threshold's own bucket that pass the exact comparison.
+     * The first and last buckets also hold the ratings below 0 and above 5, so a threshold outside
+     * that range is checked exactly against them.
+     */
+    static RoaringBitmap ratingAtLeast(Snapshot s, double minRating) {
+        if (Double.isNaN(minRating)) {
+            return new RoaringBitmap();
+        }
+        int first = bucket(minRating);
+        List<RoaringBitmap> buckets = new ArrayList<>();
+        for (int b = first + 1; b < RATING_BUCKETS; b++) {
+            buckets.add(s.ratingBuckets[b]);
+        }
+        RoaringBitmap result = buckets.isEmpty() ? new RoaringBitmap() : FastAggregation.or(buckets.iterator());
+        for (int id : s.ratingBuckets[first]) {
+            if (s.ratings[id] >= minRating) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    private static int bucket(double rating) {
+        if (Double.isNaN(rating)) {
+            return -1;
+        }
+        return Math.max(0, Math.min(RATING_BUCKETS - 1, (int) Math.floor(rating * 10)));
+    }
+
+    private static Set<Long> trigrams(String text) {
+        Set<Long> grams = new HashSet<>();
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            grams.add(((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2));
+        }
+        return grams;
+    }
+}
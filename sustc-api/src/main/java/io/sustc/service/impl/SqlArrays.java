@@ -0,0 +1,73 @@
+package io.sustc.service.impl;
+
+import java.sql.Array;
+import java.sql.SQLException;
+
+/**
+ * Decodes PostgreSQL array columns read as text, e.g. {@code ARRAY(SELECT ...)::text}.
+ * pgjdbc would return {@code Long[]} for {@code bigint[]}; parsing the text form fills a {@code long[]} directly.
+ */
+final class SqlArrays {
+
+    private static final long[] EMPTY = new long[0];
+
+    private static final String[] NO_STRINGS = new String[0];
+
+    private SqlArrays() {
+    }
+
+    /**
+     * Parses a one-dimensional {@code bigint[]} literal such as {@code {1,2,3}}. {@code null} gives an empty array.
+     */
+    static long[] toLongArray(String text) {
+        if (text == null) {
+            return EMPTY;
+        }
+        int end = text.length() - 1;
+        if (end < 1 || text.charAt(0) != '{' || text.charAt(end) != '}') {
+            throw new IllegalArgumentException("Not a bigint array: " + text);
+        }
+        if (end == 1) {
+            return EMPTY;
+        }
+        int count = 1;
+        for (int i = 1; i < end; i++) {
+            if (text.charAt(i) == ',') {
+                count++;
+            }
+        }
+        long[] values = new long[count];
+        int n = 0;
+        long value = 0;
+        boolean negative = false;
+        int digits = 0;
+        for (int i = 1; i <= end; i++) {
+            char c = text.charAt(i);
+            if (c == ',' || i == end) {
+                if (digits == 0) {
+                    throw new IllegalArgumentException("Not a bigint array: " + text);
+                }
+                values[n++] = negative ? -value : value;
+                value = 0;
+                negative = false;
+                digits = 0;
+            } else if (c == '-' && digits == 0 && !negative) {
+                negative = true;
+            } else if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                digits++;
+            } else {
+                // NULL 元素、空元素、多维数组或位置不对的负号
+                throw new IllegalArgumentException("Not a bigint array: " + text);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Reads a {@code text[]} column in the order the database returns it. {@code null} gives an empty array.
+     */
+    static String[] toStringArray(Array array) throws SQLException {
+        return array != null ? (String[]) array.getArray() : NO_STRINGS;
+    }
+}
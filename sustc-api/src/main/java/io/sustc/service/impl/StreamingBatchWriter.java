@@ -0,0 +1,106 @@
+package io.sustc.service.impl;
+
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Accumulates two-column rows from any number of parents and sends them as fixed-size JDBC batches.
+ * <p>
+ * Rows are kept in primitive arrays that are reused between batches, so a table with millions of rows
+ * costs {@code rows / batchSize} round trips and no per-row objects. The statement takes the key as the
+ * first parameter and either a {@code long} or a {@code String} value as the second one.
+ */
+final class StreamingBatchWriter {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final String sql;
+
+    private final long[] keys;
+
+    private final long[] longValues;
+
+    private final String[] stringValues;
+
+    private int size;
+
+    private long rows;
+
+    private long batches;
+
+    private StreamingBatchWriter(JdbcTemplate jdbcTemplate, String sql, int batchSize, boolean stringValued) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.sql = sql;
+        this.keys = new long[Math.max(batchSize, 1)];
+        this.longValues = stringValued ? null : new long[keys.length];
+        this.stringValues = stringValued ? new String[keys.length] : null;
+    }
+
+    static StreamingBatchWriter ofLongs(JdbcTemplate jdbcTemplate, String sql, int batchSize) {
+        return new StreamingBatchWriter(jdbcTemplate, sql, batchSize, false);
+    }
+
+    static StreamingBatchWriter ofStrings(JdbcTemplate jdbcTemplate, String sql, int batchSize) {
+        return new StreamingBatchWriter(jdbcTemplate, sql, batchSize, true);
+    }
+
+    void add(long key, long value) {
+        keys[size] = key;
+        longValues[size] = value;
+        if (++size == keys.length) {
+            flush();
+        }
+    }
+
+    void add(long key, String value) {
+        keys[size] = key;
+        stringValues[size] = value;
+        if (++size == keys.length) {
+            flush();
+        }
+    }
+
+    /**
+     * Sends the pending rows, if any. Must be called once after the last {@link #add}.
+     */
+    void flush() {
+        if (size == 0) {
+            return;
+        }
+        final int count = size;
+        jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ps.setLong(1, keys[i]);
+                if (stringValues != null) {
+                    ps.setString(2, stringValues[i]);
+                } else {
+                    ps.setLong(2, longValues[i]);
+                }
+            }
+
+            @Override
+            public int getBatchSize() {
+                return count;
+            }
+        });
+        if (stringValues != null) {
+            Arrays.fill(stringValues, 0, count, null);
+        }
+        rows += count;
+        batches++;
+        size = 0;
+    }
+
+    long getRows() {
+        return rows;
+    }
+
+    long getBatches() {
+        return batches;
+    }
+}
@@ -8,6 +8,7 @@ import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -21,6 +22,68 @@ public class UserServiceImpl implements UserService {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private IdAllocator idAllocator;
+
+    @Autowired
+    private AuthCache authCache;
+
+    @Autowired
+    private SearchIndex searchIndex;
+
+    @Autowired
+    private PageCounter pageCounter;
+
+    @Autowired
+    private SearchCache searchCache;
+
+    /**
+     * Timeline order of {@link #feed} and {@link #feedAfter}: newest first, RecipeId breaks ties.
+     */
+    private static final Keyset FEED_ORDER =
+            new Keyset("date_desc", "r.DatePublished", "timestamp", "r.RecipeId", true, true);
+
+    private static final String FEED_COLUMNS =
+            "r.RecipeId, r.Name, r.AuthorId, u.AuthorName, r.AggregatedRating, r.ReviewCount";
+
+    /**
+     * Toggles one follow edge and adjusts both counters in a single statement. All parts see the same snapshot:
+     * the delete removes the edge if it exists, otherwise the insert adds it. Toggles of the same follower are
+     * serialized by {@link #FOLLOW_LOCK_SQL}, so a concurrent toggle cannot commit in between and one part
+     * always changes the edge.
+     */
+    private static final String FOLLOW_TOGGLE_SQL =
+            "WITH followee AS (" +
+                    "    SELECT AuthorId FROM users " +
+                    "    WHERE AuthorId = ? AND (IsDeleted IS NULL OR IsDeleted = FALSE)), " +
+                    "removed AS (" +
+                    "    DELETE FROM user_follows " +
+                    "    WHERE FollowerId = ? AND FollowingId = (SELECT AuthorId FROM followee) " +
+                    "    RETURNING 1), " +
+                    "added AS (" +
+                    "    INSERT INTO user_follows (FollowerId, FollowingId) " +
+                    "    SELECT ?, AuthorId FROM followee WHERE NOT EXISTS (SELECT 1 FROM removed) " +
+                    "    ON CONFLICT DO NOTHING " +
+                    "    RETURNING 1), " +
+                    "delta AS (" +
+                    "    SELECT (SELECT COUNT(*) FROM added) - (SELECT COUNT(*) FROM removed) AS d), " +
+                    "counters AS (" +
+                    "    UPDATE users u SET " +
+                    "        Following = GREATEST(u.Following + CASE WHEN u.AuthorId = ? THEN delta.d ELSE 0 END, 0), " +
+                    "        Followers = GREATEST(u.Followers + CASE WHEN u.AuthorId = ? THEN delta.d ELSE 0 END, 0) " +
+                    "    FROM delta WHERE delta.d <> 0 AND u.AuthorId IN (?, ?) " +
+                    "    RETURNING 1) " +
+                    "SELECT EXISTS (SELECT 1 FROM followee) AS followeeExists, " +
+                    "    (SELECT COUNT(*) FROM added) AS added, " +
+                    "    (SELECT COUNT(*) FROM removed) AS removed, " +
+                    "    (SELECT COUNT(*) FROM counters) AS counters";
+
+    /**
+     * Held until the end of the transaction of {@link #follow}; keyed by the follower, the only user who can
+     * toggle its own edges.
+     */
+    private static final String FOLLOW_LOCK_SQL = "SELECT 1 FROM pg_advisory_xact_lock(?)";
+
     @Override
     public long register(RegisterUserReq req) {
         if (req == null) {
@@ -61,14 +124,7 @@ public class UserServiceImpl implements UserService {
         if (age <= 0) {
             throw new IllegalArgumentException("Invalid birthday");
         }
-        Long maxId = jdbcTemplate.queryForObject(
-                "SELECT COALESCE(MAX(AuthorId), 0) FROM users",
-                Long.class
-        );
-        if (maxId == null) {
-            maxId = 0L;
-        }
-        long authorId = maxId + 1;
+        long authorId = idAllocator.next(IdAllocator.Kind.USER);
         String sql = "INSERT INTO users (AuthorId, AuthorName, Gender, Age, Followers, Following, Password, IsDeleted) " +
                 "VALUES (?, ?, ?, ?, 0, 0, ?, FALSE)";
 
@@ -80,9 +136,12 @@ public class UserServiceImpl implements UserService {
                     age,
                     req.getPassword()
             );
+            // 清除该 id 可能缓存的“用户不存在”
+            authCache.invalidate(authorId);
 
             return authorId;
         } catch (Exception e) {
+            idAllocator.release(IdAllocator.Kind.USER, authorId);
             throw new IllegalArgumentException("Registration failed: " + e.getMessage());
         }
     }
@@ -161,16 +220,7 @@ public class UserServiceImpl implements UserService {
             return -1;
         }
 
-        try {
-            return jdbcTemplate.queryForObject(
-                    "SELECT AuthorId FROM users WHERE AuthorId = ? AND IsDeleted = FALSE AND Password = ?",
-                    Long.class,
-                    auth.getAuthorId(),
-                    auth.getPassword()
-            );
-        } catch (EmptyResultDataAccessException e) {
-            return -1;
-        }
+        return authCache.login(auth.getAuthorId(), auth.getPassword());
     }
 
     @Override
@@ -191,12 +241,17 @@ public class UserServiceImpl implements UserService {
             return false;
         }
         jdbcTemplate.update("UPDATE users SET IsDeleted = TRUE WHERE AuthorId = ?", userId);
+        authCache.invalidate(userId);
+        searchIndex.removeAuthor(userId);
+        searchCache.authorRemoved(userId);
         jdbcTemplate.update("DELETE FROM user_follows WHERE FollowerId = ? OR FollowingId = ?", userId, userId);
+        pageCounter.invalidate(PageCounter.USERS, PageCounter.USER_FOLLOWS);
 
         return true;
     }
 
     @Override
+    @Transactional
     public boolean follow(AuthInfo auth, long followeeId) {
         long followerId = login(auth);
         if (followerId == -1) {
@@ -206,69 +261,40 @@ public class UserServiceImpl implements UserService {
             throw new SecurityException("Cannot follow yourself");
         }
 
-        String checkUsersSql =
-                "SELECT " +
-                        "(SELECT COUNT(*) FROM users WHERE AuthorId = ? AND (IsDeleted IS NULL OR IsDeleted = FALSE)) as followerExists, " +
-                        "(SELECT COUNT(*) FROM users WHERE AuthorId = ? AND (IsDeleted IS NULL OR IsDeleted = FALSE)) as followeeExists";
-
-        Map<String, Object> result = jdbcTemplate.queryForMap(checkUsersSql, followerId, followeeId);
-
-        Long followerExists = (Long) result.get("followerexists");
-        Long followeeExists = (Long) result.get("followeeexists");
-
-        if (followerExists == null || followerExists == 0) {
-            throw new SecurityException("Current user does not exist or is deleted");
-        }
-
-        if (followeeExists == null || followeeExists == 0) {
+        // 先取得该用户的事务级锁，再在同一条语句中完成关注 / 取关及两个计数的更新；
+        // 语句的快照在加锁之后获取，因此能看到此前所有切换的结果
+        jdbcTemplate.queryForObject(FOLLOW_LOCK_SQL, Integer.class, followerId);
+        Map<String, Object> result = jdbcTemplate.queryForMap(FOLLOW_TOGGLE_SQL,
+                followeeId, followerId, followerId, followerId, followeeId, followerId, followeeId);
+        if (!Boolean.TRUE.equals(result.get("followeeexists"))) {
             throw new SecurityException("User to follow does not exist or is deleted");
         }
-
-        Boolean isFollowing = jdbcTemplate.queryForObject(
-                "SELECT EXISTS (SELECT 1 FROM user_follows WHERE FollowerId = ? AND FollowingId = ?)",
-                Boolean.class,
-                followerId,
-                followeeId
-        );
-
-        if (isFollowing != null && isFollowing) {
-            int deleted = jdbcTemplate.update(
-                    "DELETE FROM user_follows WHERE FollowerId = ? AND FollowingId = ?",
-                    followerId, followeeId
-            );
-
-            if (deleted > 0) {
-                jdbcTemplate.update("UPDATE users SET Following = GREATEST(Following - 1, 0) WHERE AuthorId = ?", followerId);
-                jdbcTemplate.update("UPDATE users SET Followers = GREATEST(Followers - 1, 0) WHERE AuthorId = ?", followeeId);
-            }
-
+        if (((Number) result.get("added")).intValue() > 0) {
+            pageCounter.invalidate(PageCounter.USER_FOLLOWS);
+            return true;
+        }
+        if (((Number) result.get("removed")).intValue() > 0) {
+            pageCounter.invalidate(PageCounter.USER_FOLLOWS);
             return false;
-        } else {
-            try {
-                jdbcTemplate.update(
-                        "INSERT INTO user_follows (FollowerId, FollowingId) VALUES (?, ?)",
-                        followerId, followeeId
-                );
-
-                jdbcTemplate.update("UPDATE users SET Following = Following + 1 WHERE AuthorId = ?", followerId);
-                jdbcTemplate.update("UPDATE users SET Followers = Followers + 1 WHERE AuthorId = ?", followeeId);
-
-                return true;
-            } catch (Exception e) {
-                return false;
-            }
         }
+        throw new IllegalStateException("Follow toggle " + followerId + " -> " + followeeId + " changed nothing");
     }
+
     @Override
     public UserRecord getById(long userId) {
         if (userId <= 0) {
             return null;
         }
         try {
-            String userSql = "SELECT AuthorId, AuthorName, Gender, Age, Password, IsDeleted " +
-                    "FROM users WHERE AuthorId = ? AND (IsDeleted IS NULL OR IsDeleted = FALSE)";
-
-            UserRecord user = jdbcTemplate.queryForObject(userSql, (rs, rowNum) -> {
+            // 关注关系以数组形式在同一条查询中返回，人数即数组长度
+            String userSql = "SELECT u.AuthorId, u.AuthorName, u.Gender, u.Age, u.Password, u.IsDeleted, " +
+                    "ARRAY(SELECT f.FollowerId FROM user_follows f WHERE f.FollowingId = u.AuthorId " +
+                    "ORDER BY f.FollowerId)::text AS FollowerIds, " +
+                    "ARRAY(SELECT f.FollowingId FROM user_follows f WHERE f.FollowerId = u.AuthorId " +
+                    "ORDER BY f.FollowingId)::text AS FollowingIds " +
+                    "FROM users u WHERE u.AuthorId = ? AND (u.IsDeleted IS NULL OR u.IsDeleted = FALSE)";
+
+            return jdbcTemplate.queryForObject(userSql, (rs, rowNum) -> {
                 UserRecord record = new UserRecord();
                 record.setAuthorId(rs.getLong("AuthorId"));
                 record.setAuthorName(rs.getString("AuthorName"));
@@ -276,52 +302,18 @@ public class UserServiceImpl implements UserService {
                 record.setAge(rs.getInt("Age"));
                 record.setPassword(rs.getString("Password"));
                 record.setDeleted(rs.getBoolean("IsDeleted"));
+                long[] followerIds = SqlArrays.toLongArray(rs.getString("FollowerIds"));
+                long[] followingIds = SqlArrays.toLongArray(rs.getString("FollowingIds"));
+                record.setFollowers(followerIds.length);
+                record.setFollowing(followingIds.length);
+                record.setFollowerUsers(followerIds);
+                record.setFollowingUsers(followingIds);
                 return record;
             }, userId);
-
-            if (user != null) {
-                user.setFollowers(getFollowersCount(userId));
-                user.setFollowing(getFollowingCount(userId));
-                user.setFollowerUsers(getFollowerIds(userId));
-                user.setFollowingUsers(getFollowingIds(userId));
-            }
-
-            return user;
         } catch (EmptyResultDataAccessException e) {
             return null;
         }
     }
-    private int getFollowersCount(long userId) {
-        Integer count = jdbcTemplate.queryForObject(
-                "SELECT COUNT(*) FROM user_follows WHERE FollowingId = ?",
-                Integer.class, userId
-        );
-        return count != null ? count : 0;
-    }
-
-    private int getFollowingCount(long userId) {
-        Integer count = jdbcTemplate.queryForObject(
-                "SELECT COUNT(*) FROM user_follows WHERE FollowerId = ?",
-                Integer.class, userId
-        );
-        return count != null ? count : 0;
-    }
-
-    private long[] getFollowerIds(long userId) {
-        List<Long> ids = jdbcTemplate.queryForList(
-                "SELECT FollowerId FROM user_follows WHERE FollowingId = ?",
-                Long.class, userId
-        );
-        return ids.stream().mapToLong(Long::longValue).toArray();
-    }
-
-    private long[] getFollowingIds(long userId) {
-        List<Long> ids = jdbcTemplate.queryForList(
-                "SELECT FollowingId FROM user_follows WHERE FollowerId = ?",
-                Long.class, userId
-        );
-        return ids.stream().mapToLong(Long::longValue).toArray();
-    }
 
     @Override
     public void updateProfile(AuthInfo auth, String gender, Integer age) {
@@ -361,6 +353,7 @@ public class UserServiceImpl implements UserService {
         params.add(userId);
 
         jdbcTemplate.update(sql.toString(), params.toArray());
+        authCache.invalidate(userId);
     }
 
     @Override
@@ -374,48 +367,46 @@ public class UserServiceImpl implements UserService {
         // 调整分页参数
         page = Math.max(page, 1);
         size = Math.max(1, Math.min(size, 200));
-        int offset = (page - 1) * size;
 
-        StringBuilder sql = new StringBuilder(
-                "SELECT r.RecipeId, r.Name, r.AuthorId, u.AuthorName, " +
-                        "r.AggregatedRating, r.ReviewCount " +
-                        "FROM recipes r " +
-                        "JOIN users u ON r.AuthorId = u.AuthorId " +
-                        "JOIN user_follows uf ON r.AuthorId = uf.FollowingId " +
-                        "WHERE uf.FollowerId = ? AND u.IsDeleted = FALSE "
-        );
         List<Object> params = new ArrayList<>();
-        params.add(userId);
+        String from = feedFilter(userId, category, params).toString();
+        return pageCounter.query(FEED_COLUMNS, from, params, FEED_ORDER.orderBy(), Collections.emptyList(),
+                new FeedItemRowMapper(), page, size, PageCounter.RECIPES, PageCounter.USERS, PageCounter.USER_FOLLOWS);
+    }
 
-        // 分类过滤
-        if (StringUtils.hasText(category)) {
-            sql.append("AND r.RecipeCategory = ? ");
-            params.add(category);
+    @Override
+    public CursorPage<FeedItem> feedAfter(AuthInfo auth, String cursor, int size, String category) {
+        long userId = login(auth);
+        if (userId == -1) {
+            throw new SecurityException("Invalid or inactive user");
         }
+        size = Math.max(1, Math.min(size, 200));
 
-        // 排序和分页
-        sql.append("ORDER BY r.DatePublished DESC, r.RecipeId DESC LIMIT ? OFFSET ?");
-        params.add(size);
-        params.add(offset);
-
-        List<FeedItem> items = jdbcTemplate.query(sql.toString(), new FeedItemRowMapper(), params.toArray());
+        List<Object> params = new ArrayList<>();
+        StringBuilder where = feedFilter(userId, category, params);
+        FEED_ORDER.appendAfter(where, params, cursor);
+        String sql = "SELECT " + FEED_COLUMNS + ", " + FEED_ORDER.select() + " " + where + "ORDER BY " + FEED_ORDER.orderBy();
+        return FEED_ORDER.query(jdbcTemplate, sql, new FeedItemRowMapper(), params, size);
+    }
 
-        StringBuilder countSql = new StringBuilder(
-                "SELECT COUNT(*) " +
-                        "FROM recipes r " +
+    /**
+     * {@code FROM ... WHERE ...} of the timeline of {@code userId}.
+     */
+    private static StringBuilder feedFilter(long userId, String category, List<Object> params) {
+        StringBuilder where = new StringBuilder(
+                "FROM recipes r " +
                         "JOIN users u ON r.AuthorId = u.AuthorId " +
                         "JOIN user_follows uf ON r.AuthorId = uf.FollowingId " +
                         "WHERE uf.FollowerId = ? AND u.IsDeleted = FALSE "
         );
-        List<Object> countParams = new ArrayList<>();
-        countParams.add(userId);
+        params.add(userId);
+
+        // 分类过滤
         if (StringUtils.hasText(category)) {
-            countSql.append("AND r.RecipeCategory = ? ");
-            countParams.add(category);
+            where.append("AND r.RecipeCategory = ? ");
+            params.add(category);
         }
-        long total = jdbcTemplate.queryForObject(countSql.toString(), Long.class, countParams.toArray());
-
-        return new PageResult<>(items, page, size, total);
+        return where;
     }
 
     @Override
@@ -0,0 +1,43 @@
+package io.sustc.dto;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link RecipeRecord#setRecipeIngredientParts} is where ingredients read from the database get their order.
+ */
+class RecipeRecordTest {
+
+    private static String[] sorted(String... parts) {
+        RecipeRecord record = new RecipeRecord();
+        record.setRecipeIngredientParts(parts);
+        return record.getRecipeIngredientParts();
+    }
+
+    @Test
+    void sortsIngredientPartsIgnoringCase() {
+        String[] parts = sorted("salt", "Brown sugar", "all-purpose flour", "brown rice", "Butter", "egg yolks", "eggs", "Egg");
+        assertArrayEquals(new String[]{
+                "all-purpose flour", "brown rice", "Brown sugar", "Butter", "Egg", "egg yolks", "eggs", "salt"}, parts);
+        for (int i = 1; i < parts.length; i++) {
+            assertTrue(parts[i - 1].compareToIgnoreCase(parts[i]) <= 0, parts[i - 1] + " before " + parts[i]);
+        }
+    }
+
+    @Test
+    void sortsSpacesAndPunctuationByCharacterNotCollation() {
+        // 多数数据库排序规则会忽略空格和标点，compareToIgnoreCase 不会
+        assertArrayEquals(new String[]{"ice cream", "ice-cream", "icecream"}, sorted("icecream", "ice-cream", "ice cream"));
+        assertArrayEquals(new String[]{"Olive oil", "olive-oil", "OLIVES"}, sorted("OLIVES", "olive-oil", "Olive oil"));
+    }
+
+    @Test
+    void copiesTheArrayAndReadsNullAsEmpty() {
+        String[] parts = {"b", "a"};
+        RecipeRecord record = new RecipeRecord();
+        record.setRecipeIngredientParts(parts);
+        assertArrayEquals(new String[]{"b", "a"}, parts);
+        assertArrayEquals(new String[0], sorted((String[]) null));
+    }
+}
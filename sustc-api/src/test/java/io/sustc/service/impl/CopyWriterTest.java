@@ -0,0 +1,97 @@
+package io.sustc.service.impl;
+
+import org.junit.jupiter.api.Test;
+import org.postgresql.copy.CopyIn;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CopyWriterTest {
+
+    private final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+
+    private int writes;
+
+    /**
+     * A {@link CopyIn} that only records what would be sent to the server.
+     */
+    private CopyIn copyIn() {
+        return (CopyIn) Proxy.newProxyInstance(CopyIn.class.getClassLoader(), new Class<?>[]{CopyIn.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "writeToCopy":
+                            sent.write((byte[]) args[0], (int) args[1], (int) args[2]);
+                            writes++;
+                            return null;
+                        case "endCopy":
+                            return 0L;
+                        case "isActive":
+                            return false;
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    private String text() {
+        return sent.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void writesNumbersAndNulls() throws Exception {
+        CopyWriter writer = new CopyWriter(copyIn());
+        writer.addLong(-42).addInt(7).addFloat(1.5f).addNull().addTimestamp(null)
+                .addTimestamp(Timestamp.valueOf("2020-01-02 03:04:05.5"));
+        writer.endRow();
+        writer.finish();
+
+        assertEquals("-42,7,1.5,,,2020-01-02 03:04:05.5\n", text());
+        assertEquals(1, writer.getRows());
+    }
+
+    @Test
+    void quotesStringsAndDistinguishesEmptyFromNull() throws Exception {
+        CopyWriter writer = new CopyWriter(copyIn());
+        writer.addString("").addString(null).addString("plain").endRow();
+        writer.finish();
+
+        assertEquals("\"\",,\"plain\"\n", text());
+    }
+
+    @Test
+    void escapesQuotesSeparatorsAndLineBreaks() throws Exception {
+        CopyWriter writer = new CopyWriter(copyIn());
+        writer.addString("say \"hi\"").addString("a,b").addString("line1\nline2\r\n").addString("back\\slash").endRow();
+        writer.finish();
+
+        assertEquals("\"say \"\"hi\"\"\",\"a,b\",\"line1\nline2\r\n\",\"back\\slash\"\n", text());
+    }
+
+    @Test
+    void encodesUtf8() throws Exception {
+        CopyWriter writer = new CopyWriter(copyIn());
+        writer.addString("番茄炒蛋 é").endRow();
+        writer.finish();
+
+        assertEquals("\"番茄炒蛋 é\"\n", text());
+    }
+
+    @Test
+    void flushesWhenTheBufferIsFull() throws Exception {
+        String large = "x".repeat(200_000);
+        CopyWriter writer = new CopyWriter(copyIn());
+        writer.addString(large).endRow();
+        writer.addString("next").endRow();
+        long bytes = writer.getBytes();
+        writer.finish();
+
+        assertEquals("\"" + large + "\"\n\"next\"\n", text());
+        assertEquals(sent.size(), bytes);
+        assertTrue(writes > 1);
+        assertEquals(2, writer.getRows());
+    }
+}
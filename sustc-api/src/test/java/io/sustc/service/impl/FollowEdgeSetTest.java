@@ -0,0 +1,85 @@
+package io.sustc.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FollowEdgeSetTest {
+
+    @Test
+    void packsIdsUpToThirtyTwoBits() {
+        long edge = FollowEdgeSet.pack(0xFFFFFFFFL, 0);
+        assertEquals(0xFFFFFFFFL, FollowEdgeSet.follower(edge));
+        assertEquals(0, FollowEdgeSet.following(edge));
+
+        edge = FollowEdgeSet.pack(12, 0xFFFFFFFEL);
+        assertEquals(12, FollowEdgeSet.follower(edge));
+        assertEquals(0xFFFFFFFEL, FollowEdgeSet.following(edge));
+
+        assertTrue(FollowEdgeSet.fits(0));
+        assertTrue(FollowEdgeSet.fits(0xFFFFFFFFL));
+        assertFalse(FollowEdgeSet.fits(-1));
+        assertFalse(FollowEdgeSet.fits(0x100000000L));
+    }
+
+    @Test
+    void ignoresDuplicateEdges() {
+        FollowEdgeSet set = new FollowEdgeSet(0);
+        assertTrue(set.add(1, 2));
+        assertTrue(set.add(2, 1));
+        assertFalse(set.add(1, 2));
+        assertTrue(set.add(1, 3));
+        assertEquals(3, set.size());
+    }
+
+    @Test
+    void growsAndKeepsEveryEdge() {
+        FollowEdgeSet set = new FollowEdgeSet(4);
+        TreeSet<Long> expected = new TreeSet<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            long follower = random.nextInt(500);
+            long followee = random.nextInt(500);
+            if (follower == followee) {
+                continue;
+            }
+            assertEquals(expected.add(FollowEdgeSet.pack(follower, followee)), set.add(follower, followee));
+        }
+        assertEquals(expected.size(), set.size());
+        assertArrayEquals(expected.stream().mapToLong(Long::longValue).toArray(), set.toSortedArray());
+    }
+
+    @Test
+    void sortsEdgesByFollower() {
+        FollowEdgeSet set = new FollowEdgeSet(8);
+        set.add(3, 1);
+        set.add(1, 3);
+        set.add(1, 2);
+        set.add(2, 3);
+        long[] edges = set.toSortedArray();
+        assertArrayEquals(new long[]{
+                FollowEdgeSet.pack(1, 2), FollowEdgeSet.pack(1, 3),
+                FollowEdgeSet.pack(2, 3), FollowEdgeSet.pack(3, 1)}, edges);
+    }
+
+    @Test
+    void countsFollowersAndFollowingOfKnownUsers() {
+        long[] edges = {
+                FollowEdgeSet.pack(1, 2), FollowEdgeSet.pack(1, 3),
+                FollowEdgeSet.pack(2, 3), FollowEdgeSet.pack(9, 3)};
+        FollowEdgeSet.Counts counts = new FollowEdgeSet.Counts(edges, new long[]{3, 1, 2});
+
+        assertEquals(0, counts.followers(1, -1));
+        assertEquals(2, counts.following(1, -1));
+        assertEquals(1, counts.followers(2, -1));
+        assertEquals(1, counts.following(2, -1));
+        // 9 不是已知用户：仍计入 3 的粉丝数，但自身取回退值
+        assertEquals(3, counts.followers(3, -1));
+        assertEquals(0, counts.following(3, -1));
+        assertEquals(-1, counts.followers(9, -1));
+        assertEquals(5, counts.following(9, 5));
+    }
+}
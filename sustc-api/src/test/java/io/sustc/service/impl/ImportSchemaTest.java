@@ -0,0 +1,29 @@
+package io.sustc.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImportSchemaTest {
+
+    private static ImportSchema.Index index(String name) {
+        return ImportSchema.INDEXES.stream().filter(i -> i.name.equals(name)).findFirst()
+                .orElseThrow(() -> new AssertionError("no index " + name));
+    }
+
+    @Test
+    void relevanceQueryRepeatsTheIndexedDocument() {
+        // 查询中的表达式去掉别名后必须与索引表达式逐字相同，否则规划器不会使用 idx_recipes_search
+        String indexed = ImportSchema.recipeDocument(null);
+        assertEquals(indexed, ImportSchema.recipeDocument("r").replace("r.", ""));
+        assertTrue(index("idx_recipes_search").createSql("").contains("USING GIN (" + indexed + ")"),
+                index("idx_recipes_search").createSql(""));
+        assertEquals("to_tsvector('english', COALESCE(Name, '') || ' ' || COALESCE(Description, ''))", indexed);
+    }
+
+    @Test
+    void indexNamesAreUnique() {
+        assertEquals(ImportSchema.INDEXES.size(),
+                ImportSchema.INDEXES.stream().map(i -> i.name).distinct().count());
+    }
+}
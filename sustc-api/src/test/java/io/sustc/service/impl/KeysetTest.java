@@ -0,0 +1,170 @@
+package io.sustc.service.impl;
+
+import io.sustc.dto.CursorPage;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeysetTest {
+
+    private static final Keyset RATING_DESC =
+            new Keyset("rating_desc", "AggregatedRating", "double precision", "RecipeId", true, false);
+
+    private static final Keyset RATING_ASC_NULLS_FIRST =
+            new Keyset("rating_asc", "AggregatedRating", "double precision", "RecipeId", false, true);
+
+    /**
+     * Answers every query with fixed {@code SortKey} / {@code SortId} rows and remembers the last call.
+     */
+    private static final class FakeJdbcTemplate extends JdbcTemplate {
+        private final List<String[]> rows;
+        private String sql;
+        private Object[] args;
+
+        private FakeJdbcTemplate(String[]... rows) {
+            this.rows = Arrays.asList(rows);
+        }
+
+        @Override
+        public <T> List<T> query(String sql, RowMapper<T> rowMapper, Object... args) {
+            this.sql = sql;
+            this.args = args;
+            int limit = ((Number) args[args.length - 1]).intValue();
+            List<T> result = new ArrayList<>();
+            for (int i = 0; i < Math.min(limit, rows.size()); i++) {
+                String[] row = rows.get(i);
+                ResultSet rs = (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                        new Class<?>[]{ResultSet.class},
+                        (proxy, method, a) -> "SortKey".equals(a[0]) ? row[0] : row[1]);
+                try {
+                    result.add(rowMapper.mapRow(rs, i));
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            return result;
+        }
+    }
+
+    private static final RowMapper<String> ID = (rs, rowNum) -> rs.getString("SortId");
+
+    /**
+     * Cursor that {@code keyset} hands out after a page ending with the given row.
+     */
+    private static String cursorAfter(Keyset keyset, String sortKey, String sortId) {
+        FakeJdbcTemplate jdbc = new FakeJdbcTemplate(new String[]{sortKey, sortId}, new String[]{"0", "0"});
+        String cursor = keyset.query(jdbc, "SELECT", ID, Collections.emptyList(), 1).getNextCursor();
+        assertNotNull(cursor);
+        return cursor;
+    }
+
+    private static String cursor(String text) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void fetchesOneExtraRowAndCursorsOnlyWhenMoreFollow() {
+        FakeJdbcTemplate jdbc = new FakeJdbcTemplate(
+                new String[]{"4.5", "10"}, new String[]{"4.5", "7"}, new String[]{"4", "3"});
+        CursorPage<String> page = RATING_DESC.query(jdbc, "SELECT", ID, Collections.singletonList("x"), 2);
+        assertEquals("SELECT LIMIT ?", jdbc.sql);
+        assertArrayEquals(new Object[]{"x", 3}, jdbc.args);
+        assertEquals(Arrays.asList("10", "7"), page.getItems());
+        assertNotNull(page.getNextCursor());
+
+        page = RATING_DESC.query(jdbc, "SELECT", ID, Collections.emptyList(), 3);
+        assertEquals(Arrays.asList("10", "7", "3"), page.getItems());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void roundTripsSortKeysExactly() {
+        String[] keys = {"4.333333333333333", "2021-03-04 05:06:07.123456", "", "a\u0001b=c", "汤 / soup", "=x"};
+        for (String key : keys) {
+            StringBuilder where = new StringBuilder();
+            List<Object> params = new ArrayList<>();
+            RATING_DESC.appendAfter(where, params, cursorAfter(RATING_DESC, key, "42"));
+            assertEquals(Arrays.asList(key, 42L), params, key);
+            assertEquals("AND ((AggregatedRating, RecipeId) < (CAST(? AS double precision), ?) "
+                    + "OR AggregatedRating IS NULL) ", where.toString());
+        }
+    }
+
+    @Test
+    void continuesInsideTheNullGroup() {
+        StringBuilder where = new StringBuilder();
+        List<Object> params = new ArrayList<>();
+        RATING_DESC.appendAfter(where, params, cursorAfter(RATING_DESC, null, "42"));
+        // NULLS LAST：NULL 分组之后没有别的行
+        assertEquals("AND ((AggregatedRating IS NULL AND RecipeId < ?)) ", where.toString());
+        assertEquals(Collections.singletonList(42L), params);
+
+        where.setLength(0);
+        params.clear();
+        RATING_ASC_NULLS_FIRST.appendAfter(where, params, cursorAfter(RATING_ASC_NULLS_FIRST, null, "42"));
+        assertEquals("AND ((AggregatedRating IS NULL AND RecipeId > ?) OR AggregatedRating IS NOT NULL) ",
+                where.toString());
+        assertEquals(Collections.singletonList(42L), params);
+    }
+
+    @Test
+    void skipsTheNullGroupAfterANonNullKeyWhenNullsComeFirst() {
+        StringBuilder where = new StringBuilder();
+        List<Object> params = new ArrayList<>();
+        RATING_ASC_NULLS_FIRST.appendAfter(where, params, cursorAfter(RATING_ASC_NULLS_FIRST, "3.5", "9"));
+        assertEquals("AND ((AggregatedRating, RecipeId) > (CAST(? AS double precision), ?)) ", where.toString());
+        assertEquals(Arrays.asList("3.5", 9L), params);
+    }
+
+    @Test
+    void ordersByIdAlone() {
+        Keyset byId = Keyset.byId("id_desc", "ReviewId", true);
+        assertEquals("NULL AS SortKey, ReviewId AS SortId", byId.select());
+        assertEquals("ReviewId DESC", byId.orderBy());
+        StringBuilder where = new StringBuilder();
+        List<Object> params = new ArrayList<>();
+        byId.appendAfter(where, params, cursorAfter(byId, null, "17"));
+        assertEquals("AND ReviewId < ? ", where.toString());
+        assertEquals(Collections.singletonList(17L), params);
+    }
+
+    @Test
+    void firstPageAddsNothing() {
+        StringBuilder where = new StringBuilder("WHERE TRUE ");
+        List<Object> params = new ArrayList<>();
+        RATING_DESC.appendAfter(where, params, null);
+        RATING_DESC.appendAfter(where, params, "");
+        assertEquals("WHERE TRUE ", where.toString());
+        assertTrue(params.isEmpty());
+    }
+
+    @Test
+    void rejectsInvalidCursors() {
+        String[] invalid = {
+                "not base64!",
+                cursor("rating_desc"),
+                cursor("rating_desc\u0001"),
+                cursor("rating_desc\u0001abc\u0001=4"),
+                cursor("rating_desc\u000142"),
+                cursorAfter(RATING_ASC_NULLS_FIRST, "4", "42"),
+                cursor("\u000142\u0001=4"),
+                cursor("rating_desc\u000142\u00014"),
+        };
+        for (String cursor : invalid) {
+            assertThrows(IllegalArgumentException.class,
+                    () -> RATING_DESC.appendAfter(new StringBuilder(), new ArrayList<>(), cursor), cursor);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package io.sustc.service.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LikeBufferTest {
+
+    /**
+     * Records the (review, user, liked) arrays of every flush statement instead of running it.
+     */
+    private static final class RecordingJdbcTemplate extends JdbcTemplate {
+
+        private final List<Map<List<Long>, Boolean>> flushes = new ArrayList<>();
+
+        private boolean failing;
+
+        @Override
+        public <T> T execute(String sql, PreparedStatementCallback<T> action) {
+            if (failing) {
+                throw new DataAccessResourceFailureException("connection lost");
+            }
+            Object[][] arrays = new Object[4][];
+            Connection conn = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                        Object[] elements = (Object[]) args[1];
+                        return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Array.class},
+                                (p, m, a) -> "getArray".equals(m.getName()) ? elements : null);
+                    });
+            PreparedStatement stmt = (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "getConnection":
+                                return conn;
+                            case "setArray":
+                                arrays[(int) args[0]] = (Object[]) ((Array) args[1]).getArray();
+                                return null;
+                            case "executeUpdate":
+                                return 0;
+                            default:
+                                return null;
+                        }
+                    });
+            try {
+                T result = action.doInPreparedStatement(stmt);
+                Map<List<Long>, Boolean> pairs = new HashMap<>();
+                for (int i = 0; i < arrays[1].length; i++) {
+                    pairs.put(List.of((Long) arrays[1][i], (Long) arrays[2][i]), (Boolean) arrays[3][i]);
+                }
+                flushes.add(pairs);
+                return result;
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private final RecordingJdbcTemplate jdbcTemplate = new RecordingJdbcTemplate();
+
+    private LikeBuffer buffer;
+
+    private int loads;
+
+    @BeforeEach
+    void setUp() {
+        LikeBufferConfig config = new LikeBufferConfig();
+        config.setStripes(4);
+        buffer = new LikeBuffer();
+        ReflectionTestUtils.setField(buffer, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(buffer, "config", config);
+        // 未启用时不启动后台线程，由测试手动 flush
+        buffer.start();
+    }
+
+    private LikeBuffer.Loader persisted(long likeCount, boolean liked) {
+        return () -> {
+            loads++;
+            return new long[]{likeCount, liked ? 1 : 0};
+        };
+    }
+
+    @Test
+    void repeatedTogglesCollapseIntoOneWrite() {
+        assertEquals(6, buffer.apply(1, 10, true, persisted(5, false)));
+        assertEquals(5, buffer.apply(1, 10, false, persisted(5, false)));
+        assertEquals(6, buffer.apply(1, 10, true, persisted(5, false)));
+        assertEquals(6, buffer.apply(1, 10, true, persisted(5, false)));
+        assertEquals(1, loads);
+
+        buffer.flushAll();
+        assertEquals(1, jdbcTemplate.flushes.size());
+        assertEquals(Map.of(List.of(1L, 10L), true), jdbcTemplate.flushes.get(0));
+    }
+
+    @Test
+    void togglesBackToThePersistedStateWriteNothing() {
+        buffer.apply(1, 10, false, persisted(3, true));
+        buffer.apply(1, 10, true, persisted(3, true));
+        buffer.apply(2, 20, true, persisted(0, false));
+        assertEquals(0, buffer.apply(2, 20, false, persisted(0, false)));
+
+        buffer.flushAll();
+        assertTrue(jdbcTemplate.flushes.isEmpty());
+    }
+
+    @Test
+    void countsCombineThePendingChangesOfAllUsers() {
+        assertEquals(8, buffer.apply(1, 10, true, persisted(7, false)));
+        // 同一条评论只读取一次持久化的点赞数，之后的用户只读取自己的点赞状态
+        assertEquals(9, buffer.apply(1, 11, true, persisted(100, false)));
+        assertEquals(8, buffer.apply(1, 12, false, persisted(100, true)));
+        assertEquals(8, buffer.apply(1, 13, true, persisted(100, true)));
+        assertEquals(0, buffer.apply(2, 10, false, persisted(0, false)));
+
+        buffer.flushAll();
+        Map<List<Long>, Boolean> written = new HashMap<>();
+        jdbcTemplate.flushes.forEach(written::putAll);
+        assertEquals(Map.of(List.of(1L, 10L), true, List.of(1L, 11L), true, List.of(1L, 12L), false), written);
+    }
+
+    @Test
+    void flushedPairsAreLoadedAgain() {
+        buffer.apply(1, 10, true, persisted(0, false));
+        buffer.flushAll();
+        assertEquals(0, buffer.apply(1, 10, false, persisted(1, true)));
+        assertEquals(2, loads);
+
+        buffer.flushAll();
+        assertEquals(2, jdbcTemplate.flushes.size());
+        assertEquals(Map.of(List.of(1L, 10L), false), jdbcTemplate.flushes.get(1));
+    }
+
+    @Test
+    void failedFlushKeepsThePendingChanges() {
+        buffer.apply(1, 10, true, persisted(0, false));
+        jdbcTemplate.failing = true;
+        buffer.flushAll();
+        assertEquals(1, buffer.apply(1, 10, true, persisted(0, false)));
+        assertEquals(1, loads);
+
+        jdbcTemplate.failing = false;
+        buffer.flushAll();
+        assertEquals(Map.of(List.of(1L, 10L), true), jdbcTemplate.flushes.get(0));
+    }
+
+    @Test
+    void discardDropsEverything() {
+        buffer.apply(1, 10, true, persisted(0, false));
+        buffer.discard();
+        buffer.flushAll();
+        assertTrue(jdbcTemplate.flushes.isEmpty());
+        assertEquals(1, buffer.apply(1, 10, true, persisted(0, false)));
+        assertEquals(2, loads);
+    }
+}
@@ -0,0 +1,89 @@
+package io.sustc.service.impl;
+
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchIndexTest {
+
+    private static final double[] RATINGS = {0.0, 0.7, 0.69, 0.71, 2.5, 4.9, 4.95, 4.99, 5.0, 5.2, -0.5, 1.0};
+
+    /**
+     * Recipe {@code i + 1} has {@code RATINGS[i]}; recipe {@code RATINGS.length + 1} has no rating.
+     */
+    private static SearchIndex.Snapshot snapshot() {
+        SearchIndex.Snapshot s = new SearchIndex.Snapshot();
+        for (int i = 0; i < RATINGS.length; i++) {
+            SearchIndex.setRating(s, i + 1, RATINGS[i]);
+        }
+        SearchIndex.setRating(s, RATINGS.length + 1, null);
+        return s;
+    }
+
+    private static int[] expected(double minRating) {
+        return IntStream.range(0, RATINGS.length).filter(i -> RATINGS[i] >= minRating).map(i -> i + 1).toArray();
+    }
+
+    private static int[] ids(RoaringBitmap bitmap) {
+        return bitmap.stream().toArray();
+    }
+
+    @Test
+    void matchesExactComparisonAtEveryThreshold() {
+        SearchIndex.Snapshot s = snapshot();
+        double[] thresholds = {-1.0, -0.5, 0.0, 0.05, 0.69, 0.7, 0.7000001, 0.71, 1.0, 2.5, 4.9, 4.95, 4.96,
+                5.0, 5.05, 5.1, 5.2, 5.3, 100.0};
+        for (double min : thresholds) {
+            assertArrayEquals(expected(min), ids(SearchIndex.ratingAtLeast(s, min)), "minRating " + min);
+        }
+    }
+
+    @Test
+    void skipsRecipesWithoutRating() {
+        SearchIndex.Snapshot s = snapshot();
+        int unrated = RATINGS.length + 1;
+        for (double min : new double[]{-100.0, 0.0, 5.0}) {
+            int[] ids = ids(SearchIndex.ratingAtLeast(s, min));
+            assertTrue(ids.length > 0, "minRating " + min);
+            assertFalse(IntStream.of(ids).anyMatch(id -> id == unrated), "minRating " + min);
+        }
+        assertEquals(0, SearchIndex.ratingAtLeast(s, Double.NaN).getCardinality());
+    }
+
+    @Test
+    void followsRatingUpdates() {
+        SearchIndex.Snapshot s = new SearchIndex.Snapshot();
+        SearchIndex.setRating(s, 7, 4.8);
+        assertArrayEquals(new int[]{7}, ids(SearchIndex.ratingAtLeast(s, 4.5)));
+
+        SearchIndex.setRating(s, 7, 3.0);
+        assertArrayEquals(new int[0], ids(SearchIndex.ratingAtLeast(s, 4.5)));
+        assertArrayEquals(new int[]{7}, ids(SearchIndex.ratingAtLeast(s, 3.0)));
+
+        SearchIndex.setRating(s, 7, null);
+        assertArrayEquals(new int[0], ids(SearchIndex.ratingAtLeast(s, 0.0)));
+
+        // 超出初始容量的 id
+        SearchIndex.setRating(s, 5000, 4.51);
+        assertArrayEquals(new int[]{5000}, ids(SearchIndex.ratingAtLeast(s, 4.51)));
+        assertArrayEquals(new int[0], ids(SearchIndex.ratingAtLeast(s, 4.52)));
+    }
+
+    @Test
+    void keepsStoredRatingsAsDoubles() {
+        // 4.35 不能精确表示为 float，收窄后会低于 SQL 中的 AggregatedRating >= 4.35
+        double[] stored = {4.35, Math.floor(4.345 * 100 + 0.5) / 100, 0.1 + 0.2};
+        for (double rating : stored) {
+            SearchIndex.Snapshot s = new SearchIndex.Snapshot();
+            SearchIndex.add(s, 3, "Pumpkin soup", null, "Soups", rating, 1, true);
+            assertArrayEquals(new int[]{3}, ids(SearchIndex.ratingAtLeast(s, rating)), "rating " + rating);
+            assertArrayEquals(new int[0], ids(SearchIndex.ratingAtLeast(s, Math.nextUp(rating))), "rating " + rating);
+        }
+        SearchIndex.Snapshot s = new SearchIndex.Snapshot();
+        SearchIndex.add(s, 4, "Toast", null, null, null, 1, true);
+        assertEquals(0, SearchIndex.ratingAtLeast(s, 0.0).getCardinality());
+    }
+}
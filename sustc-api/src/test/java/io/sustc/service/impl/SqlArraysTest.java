@@ -0,0 +1,61 @@
+package io.sustc.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Array;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SqlArraysTest {
+
+    /**
+     * A {@link Array} as pgjdbc returns it for a {@code text[]} column.
+     */
+    private static Array textArray(String... values) {
+        return (Array) Proxy.newProxyInstance(Array.class.getClassLoader(), new Class<?>[]{Array.class},
+                (proxy, method, args) -> "getArray".equals(method.getName()) ? values : null);
+    }
+
+    @Test
+    void readsTextArraysInDatabaseOrder() throws Exception {
+        assertArrayEquals(new String[]{"salt", "Butter", "egg"}, SqlArrays.toStringArray(textArray("salt", "Butter", "egg")));
+    }
+
+    @Test
+    void readsNullAsEmptyArray() throws Exception {
+        assertArrayEquals(new String[0], SqlArrays.toStringArray(null));
+        assertArrayEquals(new String[0], SqlArrays.toStringArray(textArray()));
+    }
+
+    @Test
+    void parsesBigintArrayLiterals() {
+        assertArrayEquals(new long[]{1, 2, 3}, SqlArrays.toLongArray("{1,2,3}"));
+        assertArrayEquals(new long[]{42}, SqlArrays.toLongArray("{42}"));
+        assertArrayEquals(new long[]{-5, 0, Long.MAX_VALUE, Long.MIN_VALUE + 1},
+                SqlArrays.toLongArray("{-5,0,9223372036854775807,-9223372036854775807}"));
+    }
+
+    @Test
+    void parsesEmptyAndNullAsEmptyArray() {
+        assertArrayEquals(new long[0], SqlArrays.toLongArray("{}"));
+        assertArrayEquals(new long[0], SqlArrays.toLongArray(null));
+    }
+
+    @Test
+    void rejectsNullElementsAndOtherShapes() {
+        assertThrows(IllegalArgumentException.class, () -> SqlArrays.toLongArray("{1,NULL}"));
+        assertThrows(IllegalArgumentException.class, () -> SqlArrays.toLongArray("{{1,2},{3,4}}"));
+        assertThrows(IllegalArgumentException.class, () -> SqlArrays.toLongArray("1,2"));
+        assertThrows(IllegalArgumentException.class, () -> SqlArrays.toLongArray("{1,2"));
+        assertThrows(IllegalArgumentException.class, () -> SqlArrays.toLongArray(""));
+        assertThrows(IllegalArgumentException.class, () -> SqlArrays.toLongArray("{1.5}"));
+    }
+
+    @Test
+    void rejectsEmptyElementsAndMisplacedSigns() {
+        for (String text : new String[]{"{1,,2}", "{,1}", "{1,}", "{,}", "{-}", "{1,-}", "{1-2}", "{--1}", "{3-}"}) {
+            assertThrows(IllegalArgumentException.class, () -> SqlArrays.toLongArray(text), text);
+        }
+    }
+}
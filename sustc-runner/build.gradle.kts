@@ -6,6 +6,7 @@ plugins {
     alias(libs.plugins.spring.boot)
     alias(libs.plugins.spring.dependencyManagement)
     alias(libs.plugins.lombok)
+    alias(libs.plugins.jmh)
 }
 
 dependencies {
@@ -25,6 +26,17 @@ dependencies {
 
     // 添加OpenCSV依赖
     implementation("com.opencsv:opencsv:5.7.1")
+
+    testImplementation("org.springframework.boot:spring-boot-starter-test")
+}
+
+tasks.test {
+    useJUnitPlatform()
+}
+
+jmh {
+    // 报告每次操作分配的字节数
+    profilers.add("gc")
 }
 
 tasks.withType<JavaExec> {
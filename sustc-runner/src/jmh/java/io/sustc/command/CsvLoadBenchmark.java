@@ -0,0 +1,63 @@
+package io.sustc.command;
+
+import com.opencsv.exceptions.CsvException;
+import io.sustc.dto.RecipeRecord;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the original sequential OpenCSV loader of recipes.csv, the reference, with the parallel
+ * {@link DatabaseCommand#loadRecipes} and the memory-mapped {@link DatabaseCommand#loadRecipesMapped}.
+ * <p>
+ * Run with {@code ./gradlew :sustc-runner:jmh}; the {@code gc} profiler reports the bytes allocated
+ * per operation ({@code gc.alloc.rate.norm}), one operation being a pass over the whole file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvLoadBenchmark {
+
+    @Param("data/csv/recipes.csv")
+    public String file;
+
+    @Benchmark
+    public List<RecipeRecord> sequentialOpenCsv() throws IOException, CsvException {
+        return SequentialCsvLoader.loadRecipes(file);
+    }
+
+    @Benchmark
+    public List<RecipeRecord> parallelOpenCsv() throws IOException {
+        return DatabaseCommand.loadRecipes(file);
+    }
+
+    @Benchmark
+    public List<RecipeRecord> mapped() throws IOException {
+        return DatabaseCommand.loadRecipesMapped(file);
+    }
+
+    /**
+     * Tokenizes every record and parses its numeric fields on one thread, without building records,
+     * to show the per-row allocation of the tokenizer itself.
+     */
+    @Benchmark
+    public void mappedNumericFieldsOnly(Blackhole blackhole) throws IOException {
+        try (MappedCsvReader reader = new MappedCsvReader(Paths.get(file), false)) {
+            reader.next();
+            while (reader.next()) {
+                blackhole.consume(reader.getLong(0));
+                blackhole.consume(reader.getLong(2));
+                for (int k = 11; k < 23 && k < reader.fieldCount(); k++) {
+                    blackhole.consume(reader.getFloat(k));
+                }
+            }
+        }
+    }
+}
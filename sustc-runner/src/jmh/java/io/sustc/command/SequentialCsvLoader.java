@@ -0,0 +1,160 @@
+package io.sustc.command;
+
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
+import com.opencsv.RFC4180ParserBuilder;
+import com.opencsv.exceptions.CsvException;
+import io.sustc.dto.RecipeRecord;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The recipes.csv loader of {@code DatabaseCommand} before the parallel and memory-mapped readers,
+ * kept unchanged as the reference of {@link CsvLoadBenchmark}: one OpenCSV reader, {@code readAll},
+ * regular expressions and a new {@code SimpleDateFormat} per field.
+ */
+final class SequentialCsvLoader {
+
+    private SequentialCsvLoader() {
+    }
+
+    static List<RecipeRecord> loadRecipes(String filePath) throws IOException, CsvException {
+        List<RecipeRecord> recipes = new ArrayList<>();
+        try (CSVReader reader = new CSVReaderBuilder(new FileReader(filePath))
+                .withCSVParser(new RFC4180ParserBuilder().build())
+                .build()) {
+
+            List<String[]> records = reader.readAll();
+
+            for (int i = 1; i < records.size(); i++) {
+                String[] fields = records.get(i);
+
+                if (fields.length >= 24) {
+                    RecipeRecord recipe = RecipeRecord.builder()
+                            .RecipeId(parseLong(fields[0]))
+                            .name(fields[1] != null ? fields[1].trim() : "")
+                            .authorId(parseLong(fields[2]))
+                            .authorName(fields[3] != null ? fields[3].trim() : "")
+                            .cookTime(fields[4] != null ? fields[4].trim() : "")
+                            .prepTime(fields[5] != null ? fields[5].trim() : "")
+                            .totalTime(fields[6] != null ? fields[6].trim() : "")
+                            .datePublished(parseTimestamp(fields[7]))
+                            .description(fields[8] != null ? fields[8].trim() : "")
+                            .recipeCategory(fields[9] != null ? fields[9].trim() : "")
+                            .recipeIngredientParts(parseCsvList(fields[10]))
+                            .aggregatedRating(parseFloat(fields[11]))
+                            .reviewCount((int)parseFloat(fields[12]))
+                            .calories(parseFloat(fields[13]))
+                            .fatContent(parseFloat(fields[14]))
+                            .saturatedFatContent(parseFloat(fields[15]))
+                            .cholesterolContent(parseFloat(fields[16]))
+                            .sodiumContent(parseFloat(fields[17]))
+                            .carbohydrateContent(parseFloat(fields[18]))
+                            .fiberContent(parseFloat(fields[19]))
+                            .sugarContent(parseFloat(fields[20]))
+                            .proteinContent(parseFloat(fields[21]))
+                            .recipeServings((int)parseFloat(fields[22]))
+                            .recipeYield(fields[23] != null ? fields[23].trim() : "")
+                            .build();
+
+                    recipes.add(recipe);
+                }
+            }
+        }
+
+        return recipes;
+    }
+
+    private static String[] parseCsvList(String listStr) {
+        if (listStr == null || listStr.trim().isEmpty() || "null".equalsIgnoreCase(listStr.trim())) {
+            return new String[0];
+        }
+
+        String trimmed = listStr.trim();
+
+        // 检查是否是 c("item1", "item2", ...) 格式
+        if (trimmed.startsWith("c(") && trimmed.endsWith(")")) {
+            // 提取括号内的内容
+            String content = trimmed.substring(2, trimmed.length() - 1).trim();
+
+            // 使用更简单的正则表达式匹配所有引号内的内容
+            Pattern pattern = Pattern.compile("\"([^\"]*)\"");
+            Matcher matcher = pattern.matcher(content);
+
+            List<String> items = new ArrayList<>();
+            while (matcher.find()) {
+                items.add(matcher.group(1));
+            }
+
+            // 如果找到了引号内的项目，返回它们
+            if (!items.isEmpty()) {
+                return items.toArray(new String[0]);
+            }
+
+            // 如果没有找到引号内容，尝试按逗号分割括号内的内容
+            return Arrays.stream(content.split("\\s*,\\s*"))
+                    .map(String::trim)
+                    .filter(s -> !s.isEmpty())
+                    .toArray(String[]::new);
+        }
+
+        // 如果不是 c(...) 格式，尝试直接按逗号分割
+        return Arrays.stream(trimmed.split("\\s*,\\s*"))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .toArray(String[]::new);
+    }
+
+    private static Timestamp parseTimestamp(String timestampStr) {
+        if (timestampStr == null || timestampStr.trim().isEmpty() || "null".equalsIgnoreCase(timestampStr.trim())) {
+            return null;
+        }
+
+        String[] dateFormats = {"yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd", "MM/dd/yyyy HH:mm:ss", "MM/dd/yyyy"};
+
+        for (String format : dateFormats) {
+            try {
+                SimpleDateFormat sdf = new SimpleDateFormat(format);
+                Date date = sdf.parse(timestampStr.trim());
+                return new Timestamp(date.getTime());
+            } catch (ParseException e) {
+            }
+        }
+
+        return null;
+    }
+
+    private static float parseFloat(String floatStr) {
+        if (floatStr == null || floatStr.trim().isEmpty() || "null".equalsIgnoreCase(floatStr.trim())) {
+            return 0.0f;
+        }
+
+        try {
+            return Float.parseFloat(floatStr.trim());
+        } catch (NumberFormatException e) {
+            return 0.0f;
+        }
+    }
+
+    private static long parseLong(String longStr) {
+        if (longStr == null || longStr.trim().isEmpty() || "null".equalsIgnoreCase(longStr.trim())) {
+            return 0L;
+        }
+
+        try {
+            return Long.parseLong(longStr.trim());
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+}
@@ -34,6 +34,17 @@ public class BenchmarkConfig {
      */
     private boolean studentMode = false;
 
+    /**
+     * Number of records per chunk in the import files written by {@code db csv2ser}.
+     */
+    private int importChunkSize = 10_000;
+
+    /**
+     * Number of concurrent calls of {@code UserService#follow} on one edge after the follow step,
+     * used to check that toggles are not lost. {@code 0} disables the check.
+     */
+    private int concurrentFollowToggles = 64;
+
     @Bean
     ThreadSafeFury fury() {
         return Fury.builder()
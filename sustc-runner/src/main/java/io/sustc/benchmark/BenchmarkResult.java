@@ -1,7 +1,11 @@
 package io.sustc.benchmark;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.sustc.dto.CacheReport;
+import io.sustc.dto.ImportReport;
 import lombok.Data;
 
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -17,6 +21,18 @@ public class BenchmarkResult {
 
     private Long elapsedTime;
 
+    /**
+     * Phase breakdown of the import step, only present for that step.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private ImportReport importReport;
+
+    /**
+     * Counters of the caches of the implementation since startup, taken after the step.
+     */
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private List<CacheReport> cacheReports;
+
     public BenchmarkResult(Long elapsedTime) {
         this.elapsedTime = elapsedTime;
     }
@@ -92,6 +92,7 @@ public class BenchmarkRunner implements ShellApplicationRunner {
                     }
                 })
                 .filter(Objects::nonNull)
+                .peek(result -> result.setCacheReports(databaseService.getCacheReports()))
                 .peek(result -> log.info("{}", result))
                 .forEach(res -> {
                     results.add(res);
@@ -14,6 +14,8 @@ import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
 
 @Service
@@ -55,6 +57,11 @@ public class BenchmarkService {
 
     @BenchmarkStep(order = 1, timeout = 35, description = "Import data")
     public BenchmarkResult importData() {
+        if (isChunked(BenchmarkConstants.REVIEW_RECORDS)
+                && isChunked(BenchmarkConstants.USER_RECORDS)
+                && isChunked(BenchmarkConstants.RECIPE_RECORDS)) {
+            return importChunks();
+        }
         List<ReviewRecord> reviewRecords = deserialize(BenchmarkConstants.IMPORT_DATA, BenchmarkConstants.REVIEW_RECORDS);
         List<UserRecord> userRecords = deserialize(BenchmarkConstants.IMPORT_DATA, BenchmarkConstants.USER_RECORDS);
         List<RecipeRecord> recipeRecords = deserialize(BenchmarkConstants.IMPORT_DATA, BenchmarkConstants.RECIPE_RECORDS);
@@ -67,7 +74,36 @@ public class BenchmarkService {
         }
         val endTime = System.currentTimeMillis();
 
-        return new BenchmarkResult(endTime - startTime);
+        val result = new BenchmarkResult(endTime - startTime);
+        result.setImportReport(databaseService.getLastImportReport());
+        return result;
+    }
+
+    /**
+     * Streams chunked import files into the database. Chunks are read lazily during the import,
+     * so the measured time includes reading and deserializing them.
+     */
+    @SneakyThrows
+    private BenchmarkResult importChunks() {
+        val dir = Paths.get(config.getDataPath(), BenchmarkConstants.IMPORT_DATA);
+        val startTime = System.currentTimeMillis();
+        try (ChunkedRecordReader<ReviewRecord> reviewChunks = new ChunkedRecordReader<>(fury, dir.resolve(BenchmarkConstants.REVIEW_RECORDS));
+             ChunkedRecordReader<UserRecord> userChunks = new ChunkedRecordReader<>(fury, dir.resolve(BenchmarkConstants.USER_RECORDS));
+             ChunkedRecordReader<RecipeRecord> recipeChunks = new ChunkedRecordReader<>(fury, dir.resolve(BenchmarkConstants.RECIPE_RECORDS))) {
+            databaseService.importData(reviewChunks, userChunks, recipeChunks);
+        } catch (Exception e) {
+            log.error("Exception encountered during importing data, you may early stop this run", e);
+        }
+        val endTime = System.currentTimeMillis();
+
+        val result = new BenchmarkResult(endTime - startTime);
+        result.setImportReport(databaseService.getLastImportReport());
+        return result;
+    }
+
+    @SneakyThrows
+    private boolean isChunked(String fileName) {
+        return ChunkedRecordReader.isChunked(Paths.get(config.getDataPath(), BenchmarkConstants.IMPORT_DATA, fileName));
     }
 
     @BenchmarkStep(order = 2, description = "Test RecipeService#getRecipeNameFromID(Long)")
@@ -592,9 +628,60 @@ public class BenchmarkService {
         });
         val endTime = System.currentTimeMillis();
 
+        cases.stream()
+                .filter(it -> Boolean.TRUE.equals(it.getValue()))
+                .findFirst()
+                .ifPresent(it -> checkConcurrentFollow((AuthInfo) it.getKey()[0], (long) it.getKey()[1]));
+
         return new BenchmarkResult(pass, endTime - startTime);
     }
 
+    /**
+     * Toggles one follow edge an even number of times from several threads. Without lost updates the edge ends
+     * in the state it started in and exactly half of the calls report a follow. Only logs, does not affect the score.
+     */
+    @SneakyThrows
+    private void checkConcurrentFollow(AuthInfo auth, long followeeId) {
+        int toggles = config.getConcurrentFollowToggles() / 2 * 2;
+        if (toggles <= 0) {
+            return;
+        }
+        val before = userService.getById(auth.getAuthorId());
+        val follows = new AtomicLong();
+        val failures = new AtomicLong();
+        val executor = Executors.newFixedThreadPool(Math.min(toggles, 8));
+        try {
+            val futures = new ArrayList<Future<?>>();
+            for (int i = 0; i < toggles; i++) {
+                futures.add(executor.submit(() -> {
+                    try {
+                        if (userService.follow(auth, followeeId)) {
+                            follows.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                        log.debug("Concurrent follow failed", e);
+                    }
+                }));
+            }
+            for (val future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        val after = userService.getById(auth.getAuthorId());
+        boolean unchanged = before != null && after != null
+                && longArrayAsSetEquals(before.getFollowingUsers(), after.getFollowingUsers())
+                && before.getFollowing() == after.getFollowing();
+        if (unchanged && failures.get() == 0 && follows.get() * 2 == toggles) {
+            log.info("Concurrent follow check passed: {} toggles of {} -> {}", toggles, auth.getAuthorId(), followeeId);
+        } else {
+            log.warn("Concurrent follow check failed: {} toggles of {} -> {}, {} follows, {} failures, state unchanged: {}",
+                    toggles, auth.getAuthorId(), followeeId, follows.get(), failures.get(), unchanged);
+        }
+    }
+
     @BenchmarkStep(order = 18, description = "Test UserService#deleteAccount(AuthInfo, long)")
     public BenchmarkResult deleteAccountTest() {
          List<Map.Entry<Object[], Boolean>> cases = deserialize(BenchmarkConstants.TEST_DATA, BenchmarkConstants.USER_DELETE);
@@ -0,0 +1,96 @@
+package io.sustc.benchmark;
+
+import io.fury.ThreadSafeFury;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the chunks written by {@link ChunkedRecordWriter} one at a time.
+ * <p>
+ * A file without the {@link #MAGIC} header is treated as a plain serialized {@code List}
+ * and returned as a single chunk, so data generated before the chunked format still works.
+ */
+public class ChunkedRecordReader<T> implements Iterator<List<T>>, AutoCloseable {
+
+    static final byte[] MAGIC = "SUSTCCHK".getBytes(StandardCharsets.US_ASCII);
+
+    private final ThreadSafeFury fury;
+
+    private final DataInputStream in;
+
+    private Iterator<List<T>> legacy;
+
+    private int nextLength = -1;
+
+    @SuppressWarnings("unchecked")
+    public ChunkedRecordReader(ThreadSafeFury fury, Path file) throws IOException {
+        this.fury = fury;
+        if (isChunked(file)) {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+            in.readFully(new byte[MAGIC.length]);
+        } else {
+            this.in = null;
+            List<T> records = (List<T>) fury.deserialize(Files.readAllBytes(file));
+            this.legacy = Collections.singletonList(records).iterator();
+        }
+    }
+
+    public static boolean isChunked(Path file) throws IOException {
+        byte[] header = new byte[MAGIC.length];
+        try (InputStream in = Files.newInputStream(file)) {
+            int n = in.readNBytes(header, 0, header.length);
+            return n == header.length && Arrays.equals(header, MAGIC);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (legacy != null) {
+            return legacy.hasNext();
+        }
+        if (nextLength < 0) {
+            try {
+                nextLength = in.readInt();
+            } catch (EOFException e) {
+                return false;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<T> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        if (legacy != null) {
+            return legacy.next();
+        }
+        byte[] bytes = new byte[nextLength];
+        nextLength = -1;
+        try {
+            in.readFully(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return (List<T>) fury.deserialize(bytes);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (in != null) {
+            in.close();
+        }
+    }
+}
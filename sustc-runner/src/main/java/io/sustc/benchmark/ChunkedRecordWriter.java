@@ -0,0 +1,77 @@
+package io.sustc.benchmark;
+
+import io.fury.ThreadSafeFury;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes records as a sequence of independently serialized chunks.
+ * <p>
+ * File layout: the {@link ChunkedRecordReader#MAGIC} header, then for every chunk
+ * its length as an {@code int} followed by the Fury bytes of a {@code List} of at most
+ * {@code chunkSize} records. Only one chunk is held in memory at a time.
+ */
+public class ChunkedRecordWriter<T> implements AutoCloseable {
+
+    private final ThreadSafeFury fury;
+
+    private final DataOutputStream out;
+
+    private final int chunkSize;
+
+    private List<T> chunk;
+
+    private long count;
+
+    public ChunkedRecordWriter(ThreadSafeFury fury, Path file, int chunkSize) throws IOException {
+        this.fury = fury;
+        this.chunkSize = Math.max(chunkSize, 1);
+        this.chunk = new ArrayList<>(this.chunkSize);
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+        out.write(ChunkedRecordReader.MAGIC);
+    }
+
+    public void write(T record) throws IOException {
+        chunk.add(record);
+        count++;
+        if (chunk.size() == chunkSize) {
+            flush();
+        }
+    }
+
+    public void writeAll(Iterable<? extends T> records) throws IOException {
+        for (T record : records) {
+            write(record);
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    private void flush() throws IOException {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        byte[] bytes = fury.serialize(chunk);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        chunk = new ArrayList<>(chunkSize);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package io.sustc.command;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.text.ParsePosition;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Field parsers of the Food.com CSV files, safe to call from many threads.
+ * <p>
+ * Patterns and date formatters are built once. The date formats are tried in the same order and with the
+ * same leniency as the former {@code SimpleDateFormat} based parser: a format matching a prefix of the text
+ * wins, out-of-range fields roll over, and the local time zone applies.
+ */
+public final class CsvFields {
+
+    // 匹配 c("a", "b") 中引号内的内容
+    private static final Pattern QUOTED_ITEM = Pattern.compile("\"([^\"]*)\"");
+
+    private static final Pattern COMMA = Pattern.compile("\\s*,\\s*");
+
+    private static final DateTimeFormatter[] DATE_FORMATS = {
+            dateFormat(false, " "),    // yyyy-MM-dd HH:mm:ss
+            dateFormat(false, "T"),    // yyyy-MM-dd'T'HH:mm:ss
+            dateFormat(false, null),   // yyyy-MM-dd
+            dateFormat(true, " "),     // MM/dd/yyyy HH:mm:ss
+            dateFormat(true, null)     // MM/dd/yyyy
+    };
+
+    private CsvFields() {
+    }
+
+    private static DateTimeFormatter dateFormat(boolean monthFirst, String timeSeparator) {
+        DateTimeFormatterBuilder builder = new DateTimeFormatterBuilder();
+        if (monthFirst) {
+            builder.appendValue(ChronoField.MONTH_OF_YEAR).appendLiteral('/')
+                    .appendValue(ChronoField.DAY_OF_MONTH).appendLiteral('/')
+                    .appendValue(ChronoField.YEAR);
+        } else {
+            builder.appendValue(ChronoField.YEAR).appendLiteral('-')
+                    .appendValue(ChronoField.MONTH_OF_YEAR).appendLiteral('-')
+                    .appendValue(ChronoField.DAY_OF_MONTH);
+        }
+        if (timeSeparator != null) {
+            builder.appendLiteral(timeSeparator)
+                    .appendValue(ChronoField.HOUR_OF_DAY).appendLiteral(':')
+                    .appendValue(ChronoField.MINUTE_OF_HOUR).appendLiteral(':')
+                    .appendValue(ChronoField.SECOND_OF_MINUTE);
+        }
+        return builder.toFormatter();
+    }
+
+    public static boolean isNull(String value) {
+        return value == null || value.trim().isEmpty() || "null".equalsIgnoreCase(value.trim());
+    }
+
+    public static String trimmed(String value) {
+        return value != null ? value.trim() : "";
+    }
+
+    public static String[] parseCsvList(String listStr) {
+        if (isNull(listStr)) {
+            return new String[0];
+        }
+
+        String trimmed = listStr.trim();
+
+        // 检查是否是 c("item1", "item2", ...) 格式
+        if (trimmed.startsWith("c(") && trimmed.endsWith(")")) {
+            String content = trimmed.substring(2, trimmed.length() - 1).trim();
+
+            Matcher matcher = QUOTED_ITEM.matcher(content);
+            List<String> items = new ArrayList<>();
+            while (matcher.find()) {
+                items.add(matcher.group(1));
+            }
+            if (!items.isEmpty()) {
+                return items.toArray(new String[0]);
+            }
+
+            // 如果没有找到引号内容，按逗号分割括号内的内容
+            return splitNonEmpty(content);
+        }
+
+        return splitNonEmpty(trimmed);
+    }
+
+    private static String[] splitNonEmpty(String content) {
+        return Arrays.stream(COMMA.split(content))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .toArray(String[]::new);
+    }
+
+    // 解析 ("123", "456") 格式的字符串为 long 数组
+    public static long[] parseCsvLongList(String listStr) {
+        if (isNull(listStr)) {
+            return new long[0];
+        }
+
+        String trimmedStr = listStr.trim();
+        if (trimmedStr.length() >= 2) {
+            trimmedStr = trimmedStr.substring(1, trimmedStr.length() - 1);
+        }
+        if (trimmedStr.isEmpty()) {
+            return new long[0];
+        }
+
+        String[] stringArray = COMMA.split(trimmedStr);
+        long[] longArray = new long[stringArray.length];
+        for (int i = 0; i < stringArray.length; i++) {
+            try {
+                longArray[i] = Long.parseLong(stringArray[i].trim());
+            } catch (NumberFormatException e) {
+                longArray[i] = 0L;
+            }
+        }
+        return longArray;
+    }
+
+    public static Timestamp parseTimestamp(String timestampStr) {
+        if (isNull(timestampStr)) {
+            return null;
+        }
+
+        String text = timestampStr.trim();
+        for (DateTimeFormatter format : DATE_FORMATS) {
+            TemporalAccessor parsed = format.parseUnresolved(text, new ParsePosition(0));
+            if (parsed != null) {
+                return new Timestamp(resolveLenient(parsed));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Builds the local date time the way a lenient {@code SimpleDateFormat} does, rolling over out-of-range fields.
+     */
+    private static long resolveLenient(TemporalAccessor parsed) {
+        LocalDateTime dateTime = LocalDate.of((int) parsed.getLong(ChronoField.YEAR), 1, 1)
+                .plusMonths(parsed.getLong(ChronoField.MONTH_OF_YEAR) - 1)
+                .plusDays(parsed.getLong(ChronoField.DAY_OF_MONTH) - 1)
+                .atStartOfDay();
+        if (parsed.isSupported(ChronoField.HOUR_OF_DAY)) {
+            dateTime = dateTime.plusHours(parsed.getLong(ChronoField.HOUR_OF_DAY))
+                    .plusMinutes(parsed.getLong(ChronoField.MINUTE_OF_HOUR))
+                    .plusSeconds(parsed.getLong(ChronoField.SECOND_OF_MINUTE));
+        }
+        return Timestamp.valueOf(dateTime).getTime();
+    }
+
+    public static float parseFloat(String floatStr) {
+        if (isNull(floatStr)) {
+            return 0.0f;
+        }
+        try {
+            return Float.parseFloat(floatStr.trim());
+        } catch (NumberFormatException e) {
+            return 0.0f;
+        }
+    }
+
+    public static int parseInt(String intStr) {
+        if (isNull(intStr)) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(intStr.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public static long parseLong(String longStr) {
+        if (isNull(longStr)) {
+            return 0L;
+        }
+        try {
+            return Long.parseLong(longStr.trim());
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+}
@@ -1,10 +1,11 @@
 package io.sustc.command;
 
-import com.opencsv.CSVReaderBuilder;
-import com.opencsv.RFC4180ParserBuilder;
 import io.fury.ThreadSafeFury;
 import io.sustc.benchmark.BenchmarkConfig;
 import io.sustc.benchmark.BenchmarkService;
+import io.sustc.benchmark.BenchmarkConstants;
+import io.sustc.benchmark.ChunkedRecordReader;
+import io.sustc.benchmark.ChunkedRecordWriter;
 import io.sustc.dto.*;
 import io.sustc.service.DatabaseService;
 import io.sustc.service.RecipeService;
@@ -17,23 +18,16 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.shell.standard.ShellComponent;
 import org.springframework.shell.standard.ShellMethod;
-import com.opencsv.CSVReader;
-import com.opencsv.exceptions.CsvException;
 
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 
-import java.sql.Timestamp;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.*;
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
+import java.util.function.Function;
+
+import static io.sustc.command.CsvFields.*;
 
 
 //在Spring Shell应用中Java类需要使用注解@ShellComponent来修饰，
@@ -43,6 +37,69 @@ import java.util.List;
 @ConditionalOnBean(DatabaseService.class)
 public class DatabaseCommand {
 
+    /**
+     * Maps a row of users.csv, {@code null} for a short row.
+     */
+    static final Function<MappedCsvReader, UserRecord> USER_ROW = row -> row.fieldCount() < 9 ? null :
+            UserRecord.builder()
+                    .authorId(row.getLong(0))
+                    .authorName(row.getTrimmed(1))
+                    .gender(row.getTrimmed(2))
+                    .age(row.getInt(3))
+                    .followers(row.getInt(4))
+                    .following(row.getInt(5))
+                    .followerUsers(row.getLongList(6))
+                    .followingUsers(row.getLongList(7))
+                    .password(row.getTrimmed(8))
+                    .build();
+
+    /**
+     * Maps a row of recipes.csv, {@code null} for a short row.
+     */
+    static final Function<MappedCsvReader, RecipeRecord> RECIPE_ROW = row -> row.fieldCount() < 24 ? null :
+            RecipeRecord.builder()
+                    .RecipeId(row.getLong(0))
+                    .name(row.getTrimmed(1))
+                    .authorId(row.getLong(2))
+                    .authorName(row.getTrimmed(3))
+                    .cookTime(row.getTrimmed(4))
+                    .prepTime(row.getTrimmed(5))
+                    .totalTime(row.getTrimmed(6))
+                    .datePublished(row.getTimestamp(7))
+                    .description(row.getTrimmed(8))
+                    .recipeCategory(row.getTrimmed(9))
+                    .recipeIngredientParts(row.getStringList(10))
+                    .aggregatedRating(row.getFloat(11))
+                    .reviewCount((int) row.getFloat(12))
+                    .calories(row.getFloat(13))
+                    .fatContent(row.getFloat(14))
+                    .saturatedFatContent(row.getFloat(15))
+                    .cholesterolContent(row.getFloat(16))
+                    .sodiumContent(row.getFloat(17))
+                    .carbohydrateContent(row.getFloat(18))
+                    .fiberContent(row.getFloat(19))
+                    .sugarContent(row.getFloat(20))
+                    .proteinContent(row.getFloat(21))
+                    .recipeServings((int) row.getFloat(22))
+                    .recipeYield(row.getTrimmed(23))
+                    .build();
+
+    /**
+     * Maps a row of reviews.csv, {@code null} for a short row.
+     */
+    static final Function<MappedCsvReader, ReviewRecord> REVIEW_ROW = row -> row.fieldCount() < 9 ? null :
+            ReviewRecord.builder()
+                    .reviewId(row.getLong(0))
+                    .recipeId(row.getLong(1))
+                    .authorId(row.getLong(2))
+                    .authorName(row.getTrimmed(3))
+                    .rating(row.getInt(4))
+                    .review(row.getTrimmed(5))
+                    .dateSubmitted(row.getTimestamp(6))
+                    .dateModified(row.getTimestamp(7))
+                    .likes(row.getLongList(8))
+                    .build();
+
     @Autowired
     private DatabaseService databaseService;
 
@@ -64,9 +121,6 @@ public class DatabaseCommand {
     @Autowired
     private BenchmarkConfig config;
 
-    List<ReviewRecord> reviewRecords;
-    List<UserRecord> userRecords;
-    List<RecipeRecord> recipeRecords;
     @Autowired
     private DatabaseServiceImpl databaseServiceImpl;
 
@@ -75,20 +129,55 @@ public class DatabaseCommand {
         return databaseService.getGroupMembers();
     }
 
-    @ShellMethod(key = "db import", value = "Drop all the tables. Then import data from csv")
-    public void importData() {
+    @ShellMethod(key = "db import", value = "Drop all the tables. Then import the files written by db csv2ser")
+    public void importData() throws IOException {
+        Path dir = Paths.get(System.getProperty("user.dir"), "data", "import");
+        if (!isChunked(dir.resolve(BenchmarkConstants.REVIEW_RECORDS))
+                || !isChunked(dir.resolve(BenchmarkConstants.USER_RECORDS))
+                || !isChunked(dir.resolve(BenchmarkConstants.RECIPE_RECORDS))) {
+            System.out.println("No chunked files in " + dir + ", run db csv2ser first");
+            return;
+        }
 
         long startTime = System.currentTimeMillis();
 
         databaseService.drop();
-        databaseService.importData(reviewRecords,
-                        userRecords,
-                        recipeRecords);
+        try (ChunkedRecordReader<ReviewRecord> reviewChunks = new ChunkedRecordReader<>(fury, dir.resolve(BenchmarkConstants.REVIEW_RECORDS));
+             ChunkedRecordReader<UserRecord> userChunks = new ChunkedRecordReader<>(fury, dir.resolve(BenchmarkConstants.USER_RECORDS));
+             ChunkedRecordReader<RecipeRecord> recipeChunks = new ChunkedRecordReader<>(fury, dir.resolve(BenchmarkConstants.RECIPE_RECORDS))) {
+            databaseService.importData(reviewChunks, userChunks, recipeChunks);
+        }
 
         long endTime = System.currentTimeMillis();
         long duration = endTime - startTime;
 
         System.out.println("importData time: " + duration + " ms");
+        ImportReport report = databaseService.getLastImportReport();
+        if (report != null) {
+            for (ImportReport.Phase phase : report.getPhases()) {
+                System.out.printf("  %-32s +%6d ms %8d ms %10d rows %12.0f rows/s %14d bytes %14.0f bytes/s%n",
+                        phase.getName(), phase.getStartMillis(), phase.getElapsedMillis(), phase.getRows(),
+                        phase.getRowsPerSecond(), phase.getBytes(), phase.getBytesPerSecond());
+            }
+            System.out.println("  loaded rows: " + report.getRows() + ", recomputed rows: " + report.getRecomputedRows());
+        }
+    }
+
+    private static boolean isChunked(Path file) throws IOException {
+        return Files.isRegularFile(file) && ChunkedRecordReader.isChunked(file);
+    }
+
+    @ShellMethod(key = "db cache-stats", value = "Show the hit rates of the caches")
+    public void cacheStats() {
+        for (CacheReport cache : databaseService.getCacheReports()) {
+            System.out.printf("  %-8s %-8s %10d hits %10d misses %6.1f%% hit rate %8d evictions %8d entries",
+                    cache.getName(), cache.isEnabled() ? "enabled" : "disabled", cache.getHitCount(),
+                    cache.getMissCount(), cache.getHitRate() * 100, cache.getEvictionCount(), cache.getSize());
+            if (cache.getVerifiedReads() > 0) {
+                System.out.printf(" %d of %d verified hits stale", cache.getStaleReads(), cache.getVerifiedReads());
+            }
+            System.out.println();
+        }
     }
 
     @ShellMethod(key = "db drop", value = "Drop all the tables")
@@ -108,249 +197,73 @@ public class DatabaseCommand {
             String projectRoot = System.getProperty("user.dir");
             System.out.println("projectRoot:" + projectRoot);
 
-            userRecords = loadUsers(projectRoot + "/data/csv/users.csv");
-            recipeRecords = loadRecipes(projectRoot + "/data/csv/recipes.csv");
-            reviewRecords = loadReviews(projectRoot + "/data/csv/reviews.csv");
-
-            // 序列化数据
-            serializeData(userRecords, projectRoot + "/data/import/users.ser");
-            serializeData(recipeRecords, projectRoot + "/data/import/recipes.ser");
-            serializeData(reviewRecords, projectRoot + "/data/import/reviews.ser");
+            // 分块并行解析，按文件顺序写入分块文件，不在内存中保留整个数据集
+            long users = serializeCsv(projectRoot + "/data/csv/users.csv", false, USER_ROW,
+                    projectRoot + "/data/import/users.ser");
+            long recipes = serializeCsv(projectRoot + "/data/csv/recipes.csv", true, RECIPE_ROW,
+                    projectRoot + "/data/import/recipes.ser");
+            long reviews = serializeCsv(projectRoot + "/data/csv/reviews.csv", false, REVIEW_ROW,
+                    projectRoot + "/data/import/reviews.ser");
 
             System.out.println("Data loading and serialization have been completed!");
-            System.out.println("user count: " + userRecords.size());
-            System.out.println("recipe count: " + recipeRecords.size());
-            System.out.println("review count: " + reviewRecords.size());
+            System.out.println("user count: " + users);
+            System.out.println("recipe count: " + recipes);
+            System.out.println("review count: " + reviews);
 
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
-    private static String[] parseCsvList(String listStr) {
-        if (listStr == null || listStr.trim().isEmpty() || "null".equalsIgnoreCase(listStr.trim())) {
-            return new String[0];
-        }
-
-        String trimmed = listStr.trim();
-
-        // 检查是否是 c("item1", "item2", ...) 格式
-        if (trimmed.startsWith("c(") && trimmed.endsWith(")")) {
-            // 提取括号内的内容
-            String content = trimmed.substring(2, trimmed.length() - 1).trim();
-
-            // 使用更简单的正则表达式匹配所有引号内的内容
-            Pattern pattern = Pattern.compile("\"([^\"]*)\"");
-            Matcher matcher = pattern.matcher(content);
-
-            List<String> items = new ArrayList<>();
-            while (matcher.find()) {
-                items.add(matcher.group(1));
-            }
-
-            // 如果找到了引号内的项目，返回它们
-            if (!items.isEmpty()) {
-                return items.toArray(new String[0]);
-            }
-
-            // 如果没有找到引号内容，尝试按逗号分割括号内的内容
-            return Arrays.stream(content.split("\\s*,\\s*"))
-                    .map(String::trim)
-                    .filter(s -> !s.isEmpty())
-                    .toArray(String[]::new);
-        }
-
-        // 如果不是 c(...) 格式，尝试直接按逗号分割
-        return Arrays.stream(trimmed.split("\\s*,\\s*"))
-                .map(String::trim)
-                .filter(s -> !s.isEmpty())
-                .toArray(String[]::new);
+    public static List<RecipeRecord> loadRecipes(String filePath) throws IOException {
+        return ParallelCsvReader.read(Paths.get(filePath), true, fields -> fields.length < 24 ? null :
+                RecipeRecord.builder()
+                        .RecipeId(parseLong(fields[0]))
+                        .name(trimmed(fields[1]))
+                        .authorId(parseLong(fields[2]))
+                        .authorName(trimmed(fields[3]))
+                        .cookTime(trimmed(fields[4]))
+                        .prepTime(trimmed(fields[5]))
+                        .totalTime(trimmed(fields[6]))
+                        .datePublished(parseTimestamp(fields[7]))
+                        .description(trimmed(fields[8]))
+                        .recipeCategory(trimmed(fields[9]))
+                        .recipeIngredientParts(parseCsvList(fields[10]))
+                        .aggregatedRating(parseFloat(fields[11]))
+                        .reviewCount((int) parseFloat(fields[12]))
+                        .calories(parseFloat(fields[13]))
+                        .fatContent(parseFloat(fields[14]))
+                        .saturatedFatContent(parseFloat(fields[15]))
+                        .cholesterolContent(parseFloat(fields[16]))
+                        .sodiumContent(parseFloat(fields[17]))
+                        .carbohydrateContent(parseFloat(fields[18]))
+                        .fiberContent(parseFloat(fields[19]))
+                        .sugarContent(parseFloat(fields[20]))
+                        .proteinContent(parseFloat(fields[21]))
+                        .recipeServings((int) parseFloat(fields[22]))
+                        .recipeYield(trimmed(fields[23]))
+                        .build());
     }
 
-    // 辅助方法：解析("123", "456")格式的字符串为long数组
-    private static long[] parseCsvLongList(String listStr) {
-        // 处理空值或空字符串
-        if (listStr == null || listStr.trim().isEmpty() || "null".equalsIgnoreCase(listStr.trim())) {
-            return new long[0];
-        }
-
-        String trimmedStr = listStr.trim();
-        if(trimmedStr.length()>=2) {
-            trimmedStr = trimmedStr.substring(1, trimmedStr.length() - 1);
-        }
-
-        if (trimmedStr.isEmpty()) {
-            return new long[0];
-        }
-
-        String[] stringArray = trimmedStr.split("\\s*,\\s*");
-        long[] longArray = new long[stringArray.length];
-
-        for (int i = 0; i < stringArray.length; i++) {
-            try {
-                longArray[i] = Long.parseLong(stringArray[i].trim());
-            } catch (NumberFormatException e) {
-                longArray[i] = 0L;
-            }
-        }
-
-        return longArray;
+    /**
+     * Same result as {@link #loadRecipes(String)}, tokenized from a memory-mapped file.
+     */
+    public static List<RecipeRecord> loadRecipesMapped(String filePath) throws IOException {
+        return ParallelCsvReader.readMapped(Paths.get(filePath), true, RECIPE_ROW);
     }
 
-    private static Timestamp parseTimestamp(String timestampStr) {
-        if (timestampStr == null || timestampStr.trim().isEmpty() || "null".equalsIgnoreCase(timestampStr.trim())) {
-            return null;
-        }
-
-        String[] dateFormats = {"yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd", "MM/dd/yyyy HH:mm:ss", "MM/dd/yyyy"};
-
-        for (String format : dateFormats) {
-            try {
-                SimpleDateFormat sdf = new SimpleDateFormat(format);
-                Date date = sdf.parse(timestampStr.trim());
-                return new Timestamp(date.getTime());
-            } catch (ParseException e) {
-            }
+    /**
+     * Parses a CSV file in parallel and writes the mapped records to a chunked file in file order,
+     * holding only the chunks being parsed and one output chunk in memory.
+     *
+     * @return the number of records written
+     */
+    public <T> long serializeCsv(String csvFilePath, boolean rfc4180, Function<MappedCsvReader, T> mapper,
+                                 String outputFilePath) throws IOException {
+        try (ChunkedRecordWriter<T> writer = new ChunkedRecordWriter<>(fury, Paths.get(outputFilePath), config.getImportChunkSize())) {
+            ParallelCsvReader.forEachMapped(Paths.get(csvFilePath), rfc4180, mapper, writer::write);
+            return writer.getCount();
         }
-
-        return null;
-    }
-
-    private static float parseFloat(String floatStr) {
-        if (floatStr == null || floatStr.trim().isEmpty() || "null".equalsIgnoreCase(floatStr.trim())) {
-            return 0.0f;
-        }
-
-        try {
-            return Float.parseFloat(floatStr.trim());
-        } catch (NumberFormatException e) {
-            return 0.0f;
-        }
-    }
-
-    private static int parseInt(String intStr) {
-        if (intStr == null || intStr.trim().isEmpty() || "null".equalsIgnoreCase(intStr.trim())) {
-            return 0;
-        }
-
-        try {
-            return Integer.parseInt(intStr.trim());
-        } catch (NumberFormatException e) {
-            return 0;
-        }
-    }
-
-    private static long parseLong(String longStr) {
-        if (longStr == null || longStr.trim().isEmpty() || "null".equalsIgnoreCase(longStr.trim())) {
-            return 0L;
-        }
-
-        try {
-            return Long.parseLong(longStr.trim());
-        } catch (NumberFormatException e) {
-            return 0L;
-        }
-    }
-
-    public static List<UserRecord> loadUsers(String filePath) throws IOException, CsvException {
-        List<UserRecord> users = new ArrayList<>();
-
-        try (CSVReader reader = new CSVReader(new FileReader(filePath))) {
-            List<String[]> records = reader.readAll();
-
-            for (int i = 1; i < records.size(); i++) {
-                String[] fields = records.get(i);
-
-                if (fields.length >= 9) {
-                    UserRecord user = UserRecord.builder().authorId(parseLong(fields[0])).authorName(fields[1] != null ? fields[1].trim() : "").gender(fields[2] != null ? fields[2].trim() : "").age(parseInt(fields[3])).
-                            followers(parseInt(fields[4])).
-                            following(parseInt(fields[5])).
-                            followerUsers(parseCsvLongList(fields[6])).
-                            followingUsers(parseCsvLongList(fields[7])).
-                            password(fields[8] != null ? fields[8].trim() : "").build();
-
-                    users.add(user);
-                }
-            }
-        }
-
-        return users;
-    }
-
-    public static List<RecipeRecord> loadRecipes(String filePath) throws IOException, CsvException {
-        List<RecipeRecord> recipes = new ArrayList<>();
-        try (CSVReader reader = new CSVReaderBuilder(new FileReader(filePath))
-                .withCSVParser(new RFC4180ParserBuilder().build())
-                .build()) {
-
-            List<String[]> records = reader.readAll();
-
-            for (int i = 1; i < records.size(); i++) {
-                String[] fields = records.get(i);
-
-                if (fields.length >= 24) {
-                    RecipeRecord recipe = RecipeRecord.builder()
-                            .RecipeId(parseLong(fields[0]))
-                            .name(fields[1] != null ? fields[1].trim() : "")
-                            .authorId(parseLong(fields[2]))
-                            .authorName(fields[3] != null ? fields[3].trim() : "")
-                            .cookTime(fields[4] != null ? fields[4].trim() : "")
-                            .prepTime(fields[5] != null ? fields[5].trim() : "")
-                            .totalTime(fields[6] != null ? fields[6].trim() : "")
-                            .datePublished(parseTimestamp(fields[7]))
-                            .description(fields[8] != null ? fields[8].trim() : "")
-                            .recipeCategory(fields[9] != null ? fields[9].trim() : "")
-                            .recipeIngredientParts(parseCsvList(fields[10]))
-                            .aggregatedRating(parseFloat(fields[11]))
-                            .reviewCount((int)parseFloat(fields[12]))
-                            .calories(parseFloat(fields[13]))
-                            .fatContent(parseFloat(fields[14]))
-                            .saturatedFatContent(parseFloat(fields[15]))
-                            .cholesterolContent(parseFloat(fields[16]))
-                            .sodiumContent(parseFloat(fields[17]))
-                            .carbohydrateContent(parseFloat(fields[18]))
-                            .fiberContent(parseFloat(fields[19]))
-                            .sugarContent(parseFloat(fields[20]))
-                            .proteinContent(parseFloat(fields[21]))
-                            .recipeServings((int)parseFloat(fields[22]))
-                            .recipeYield(fields[23] != null ? fields[23].trim() : "")
-                            .build();
-
-                    recipes.add(recipe);
-                }
-            }
-        }
-
-        return recipes;
-    }
-
-    public static List<ReviewRecord> loadReviews(String filePath) throws IOException, CsvException {
-        List<ReviewRecord> reviews = new ArrayList<>();
-        try (CSVReader reader = new CSVReader(new FileReader(filePath))) {
-            List<String[]> records = reader.readAll();
-            for (int i = 1; i < records.size(); i++) {
-                String[] fields = records.get(i);
-
-                if (fields.length >= 9) {
-                    ReviewRecord review = ReviewRecord.builder().reviewId(parseLong(fields[0])).
-                            recipeId(parseLong(fields[1])).authorId(parseLong(fields[2])).
-                            authorName(fields[3] != null ? fields[3].trim() : "").
-                            rating(parseInt(fields[4])).review(fields[5] != null ? fields[5].trim() : "").
-                            dateSubmitted(parseTimestamp(fields[6])).dateModified(parseTimestamp(fields[7])).
-                            likes(parseCsvLongList(fields[8])).build();
-
-                    reviews.add(review);
-                }
-            }
-        }
-
-        return reviews;
-    }
-
-    @SneakyThrows
-    public void serializeData(List<?> data, String outputFilePath) throws IOException {
-        byte[] serializedData = fury.serialize(data);
-        Files.write(Paths.get(outputFilePath), serializedData);
     }
 
     @SneakyThrows
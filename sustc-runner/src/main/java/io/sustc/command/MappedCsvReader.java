@@ -0,0 +1,554 @@
+package io.sustc.command;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tokenizes a CSV file, or a byte range of it, straight from a memory-mapped window.
+ * <p>
+ * {@link #next()} only records where the fields of the current record start and end, nothing is decoded.
+ * Numbers and timestamps are parsed from the mapped bytes, strings are decoded only when asked for,
+ * and the scratch buffers are reused from record to record, so a row costs little more than the
+ * objects the caller keeps. The window is remapped at a record start when a record crosses its end,
+ * which lets files larger than 2 GiB be read.
+ * <p>
+ * Quoting follows RFC 4180 ({@code ""} inside quotes). With {@code backslashEscape} a backslash is read like
+ * the default OpenCSV parser reads it, inside and outside quotes: before a quote or a backslash it makes that
+ * character literal, before any other character it is dropped, so an unquoted {@code a\,b} is two fields.
+ * Every typed getter returns the same value as the matching {@link CsvFields} method applied to the decoded
+ * field.
+ */
+public final class MappedCsvReader implements AutoCloseable {
+
+    public static final int DEFAULT_WINDOW = 64 << 20;
+
+    private final FileChannel channel;
+
+    private final boolean ownsChannel;
+
+    private final long end;
+
+    private final boolean backslashEscape;
+
+    private int windowSize;
+
+    private MappedByteBuffer buffer;
+
+    private long bufferOffset;
+
+    private int position;
+
+    private int fields;
+
+    private int[] starts = new int[32];
+
+    private int[] ends = new int[32];
+
+    private boolean[] escaped = new boolean[32];
+
+    private byte[] scratch = new byte[1024];
+
+    private long[] longs = new long[64];
+
+    private final List<String> items = new ArrayList<>();
+
+    public MappedCsvReader(Path file, boolean backslashEscape) throws IOException {
+        this(FileChannel.open(file, StandardOpenOption.READ), true, 0, -1, backslashEscape, DEFAULT_WINDOW);
+    }
+
+    /**
+     * Reads the records in {@code [start, end)} of a channel owned by the caller;
+     * {@code start} must be the start of a record.
+     */
+    public MappedCsvReader(FileChannel channel, long start, long end, boolean backslashEscape) throws IOException {
+        this(channel, false, start, end, backslashEscape, DEFAULT_WINDOW);
+    }
+
+    MappedCsvReader(FileChannel channel, boolean ownsChannel, long start, long end,
+                    boolean backslashEscape, int windowSize) throws IOException {
+        this.channel = channel;
+        this.ownsChannel = ownsChannel;
+        this.end = end < 0 ? channel.size() : end;
+        this.backslashEscape = backslashEscape;
+        this.windowSize = windowSize;
+        map(start);
+    }
+
+    private void map(long offset) throws IOException {
+        long length = Math.min(windowSize, end - offset);
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        bufferOffset = offset;
+        position = 0;
+    }
+
+    /**
+     * Moves to the next record.
+     *
+     * @return {@code false} at the end of the range
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            if (bufferOffset + position >= end) {
+                return false;
+            }
+            int limit = buffer.limit();
+            boolean last = bufferOffset + limit >= end;
+            int next = tokenize(position, limit, last);
+            if (next >= 0) {
+                position = next;
+                return true;
+            }
+            // 记录跨过了窗口末尾，从记录开头重新映射；单条记录比窗口还大时扩大窗口
+            if (position == 0) {
+                windowSize = (int) Math.min((long) windowSize * 2, Integer.MAX_VALUE);
+            }
+            map(bufferOffset + position);
+        }
+    }
+
+    public int fieldCount() {
+        return fields;
+    }
+
+    /**
+     * @return the offset after the current record, or -1 if it does not end before {@code limit}
+     */
+    private int tokenize(int from, int limit, boolean last) {
+        fields = 0;
+        int i = from;
+        while (true) {
+            int start = i;
+            int contentEnd = -1;
+            boolean escapes = false;
+            if (i < limit && buffer.get(i) == '"') {
+                start = ++i;
+                while (true) {
+                    if (i >= limit) {
+                        if (!last) {
+                            return -1;
+                        }
+                        contentEnd = limit;
+                        break;
+                    }
+                    byte b = buffer.get(i);
+                    if (b == '\\' && backslashEscape) {
+                        // 引号内反斜杠后的任意字符都按原样保留，反斜杠本身丢弃
+                        if (i + 1 >= limit && !last) {
+                            return -1;
+                        }
+                        escapes = true;
+                        i = Math.min(i + 2, limit);
+                        continue;
+                    }
+                    if (b == '"') {
+                        if (i + 1 >= limit && !last) {
+                            return -1;
+                        }
+                        if (i + 1 < limit && buffer.get(i + 1) == '"') {
+                            escapes = true;
+                            i += 2;
+                            continue;
+                        }
+                        contentEnd = i++;
+                        break;
+                    }
+                    i++;
+                }
+            }
+            while (i < limit && buffer.get(i) != ',' && buffer.get(i) != '\n') {
+                if (buffer.get(i) == '\\' && backslashEscape && contentEnd < 0) {
+                    // 引号外只有引号和反斜杠可被转义，分隔符和换行照常生效
+                    if (i + 1 >= limit && !last) {
+                        return -1;
+                    }
+                    escapes = true;
+                    if (i + 1 < limit && (buffer.get(i + 1) == '"' || buffer.get(i + 1) == '\\')) {
+                        i++;
+                    }
+                }
+                i++;
+            }
+            if (i >= limit && !last) {
+                return -1;
+            }
+            int fieldEnd = contentEnd >= 0 ? contentEnd : i;
+            if (contentEnd < 0 && (i >= limit || buffer.get(i) == '\n') && fieldEnd > start && buffer.get(fieldEnd - 1) == '\r') {
+                fieldEnd--;
+            }
+            addField(start, fieldEnd, escapes);
+            if (i >= limit) {
+                return limit;
+            }
+            if (buffer.get(i) == '\n') {
+                return i + 1;
+            }
+            i++;
+        }
+    }
+
+    private void addField(int start, int end, boolean escapes) {
+        if (fields == starts.length) {
+            starts = Arrays.copyOf(starts, fields * 2);
+            ends = Arrays.copyOf(ends, fields * 2);
+            escaped = Arrays.copyOf(escaped, fields * 2);
+        }
+        starts[fields] = start;
+        ends[fields] = end;
+        escaped[fields] = escapes;
+        fields++;
+    }
+
+    /**
+     * Copies the unescaped content of field {@code k} into {@link #scratch}.
+     *
+     * @return the content length
+     */
+    private int copy(int k) {
+        int length = ends[k] - starts[k];
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        int n = 0;
+        for (int i = starts[k]; i < ends[k]; i++) {
+            byte b = buffer.get(i);
+            if (escaped[k]) {
+                if (b == '\\' && backslashEscape) {
+                    // 反斜杠丢弃，其后的字符原样保留
+                    if (++i >= ends[k]) {
+                        break;
+                    }
+                    b = buffer.get(i);
+                } else if (b == '"' && i + 1 < ends[k] && buffer.get(i + 1) == '"') {
+                    i++;
+                }
+            }
+            scratch[n++] = b;
+        }
+        return n;
+    }
+
+    public String getString(int k) {
+        int length = copy(k);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Same as {@link CsvFields#trimmed(String)} of the field.
+     */
+    public String getTrimmed(int k) {
+        int length = copy(k);
+        int from = trimStart(0, length);
+        int to = trimEnd(from, length);
+        return new String(scratch, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Same as {@link CsvFields#isNull(String)} of the field.
+     */
+    public boolean isNull(int k) {
+        if (escaped[k]) {
+            return CsvFields.isNull(getString(k));
+        }
+        int from = trimmedStart(k);
+        int to = trimmedEnd(k, from);
+        if (from == to) {
+            return true;
+        }
+        if (to - from != 4) {
+            return false;
+        }
+        return (buffer.get(from) | 0x20) == 'n' && (buffer.get(from + 1) | 0x20) == 'u'
+                && (buffer.get(from + 2) | 0x20) == 'l' && (buffer.get(from + 3) | 0x20) == 'l';
+    }
+
+    public long getLong(int k) {
+        if (escaped[k]) {
+            return CsvFields.parseLong(getString(k));
+        }
+        if (isNull(k)) {
+            return 0L;
+        }
+        int from = trimmedStart(k);
+        int to = trimmedEnd(k, from);
+        long value = parseDigits(from, to, 18);
+        return value != Long.MIN_VALUE ? value : CsvFields.parseLong(getString(k));
+    }
+
+    public int getInt(int k) {
+        if (escaped[k]) {
+            return CsvFields.parseInt(getString(k));
+        }
+        if (isNull(k)) {
+            return 0;
+        }
+        int from = trimmedStart(k);
+        int to = trimmedEnd(k, from);
+        long value = parseDigits(from, to, 9);
+        return value != Long.MIN_VALUE ? (int) value : CsvFields.parseInt(getString(k));
+    }
+
+    public float getFloat(int k) {
+        if (escaped[k]) {
+            return CsvFields.parseFloat(getString(k));
+        }
+        if (isNull(k)) {
+            return 0.0f;
+        }
+        int from = trimmedStart(k);
+        int to = trimmedEnd(k, from);
+        // 尾数不超过 2^24 且小数位不超过 10 位时，float 除法的结果与 Float.parseFloat 一样是正确舍入的
+        boolean negative = false;
+        int i = from;
+        if (i < to && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i++) == '-';
+        }
+        int mantissa = 0;
+        int digits = 0;
+        int decimals = -1;
+        for (; i < to; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                if (++digits > 7 || decimals >= 0 && ++decimals > 10) {
+                    return CsvFields.parseFloat(getString(k));
+                }
+            } else if (b == '.' && decimals < 0) {
+                decimals = 0;
+            } else {
+                return CsvFields.parseFloat(getString(k));
+            }
+        }
+        if (digits == 0) {
+            return CsvFields.parseFloat(getString(k));
+        }
+        float value = decimals > 0 ? mantissa / POWERS_OF_TEN[decimals] : mantissa;
+        return negative ? -value : value;
+    }
+
+    private static final float[] POWERS_OF_TEN = {
+            1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+    };
+
+    /**
+     * Parses {@code yyyy-MM-dd[T ]HH:mm:ss} directly, anything else goes through {@link CsvFields#parseTimestamp(String)}.
+     */
+    public Timestamp getTimestamp(int k) {
+        if (escaped[k]) {
+            return CsvFields.parseTimestamp(getString(k));
+        }
+        if (isNull(k)) {
+            return null;
+        }
+        int from = trimmedStart(k);
+        int to = trimmedEnd(k, from);
+        if (to - from >= 19 && buffer.get(from + 4) == '-' && buffer.get(from + 7) == '-'
+                && (buffer.get(from + 10) == 'T' || buffer.get(from + 10) == ' ')
+                && buffer.get(from + 13) == ':' && buffer.get(from + 16) == ':'
+                && (to - from == 19 || !isDigit(buffer.get(from + 19)))) {
+            long year = parseDigits(from, from + 4, 4);
+            long month = parseDigits(from + 5, from + 7, 2);
+            long day = parseDigits(from + 8, from + 10, 2);
+            long hour = parseDigits(from + 11, from + 13, 2);
+            long minute = parseDigits(from + 14, from + 16, 2);
+            long second = parseDigits(from + 17, from + 19, 2);
+            if (year >= 0 && month >= 1 && month <= 12 && day >= 1
+                    && day <= Month.of((int) month).length(Year.isLeap(year))
+                    && hour >= 0 && hour <= 23 && minute >= 0 && minute <= 59 && second >= 0 && second <= 59) {
+                return Timestamp.valueOf(LocalDateTime.of((int) year, (int) month, (int) day,
+                        (int) hour, (int) minute, (int) second));
+            }
+        }
+        return CsvFields.parseTimestamp(getString(k));
+    }
+
+    /**
+     * Same as {@link CsvFields#parseCsvLongList(String)} of the field.
+     */
+    public long[] getLongList(int k) {
+        if (isNull(k)) {
+            return new long[0];
+        }
+        int length = copy(k);
+        int from = trimStart(0, length);
+        int to = trimEnd(from, length);
+        if (to - from >= 2) {
+            from++;
+            to--;
+        }
+        if (from == to) {
+            return new long[0];
+        }
+        boolean hasComma = false;
+        for (int i = from; i < to && !hasComma; i++) {
+            hasComma = scratch[i] == ',';
+        }
+        int n = 0;
+        int kept = 0;
+        int pieceStart = from;
+        for (int i = from; i <= to; i++) {
+            if (i == to || scratch[i] == ',') {
+                int s = trimStart(pieceStart, i);
+                int e = trimEnd(s, i);
+                if (n == longs.length) {
+                    longs = Arrays.copyOf(longs, n * 2);
+                }
+                long value = parseScratchLong(s, e);
+                longs[n++] = value;
+                // 按 \s*,\s* 切分时空白被逗号吸收，String.split 还会丢弃末尾的空串
+                if (e > s || !hasComma) {
+                    kept = n;
+                }
+                pieceStart = i + 1;
+            }
+        }
+        return Arrays.copyOf(longs, kept);
+    }
+
+    /**
+     * Same as {@link CsvFields#parseCsvList(String)} of the field.
+     */
+    public String[] getStringList(int k) {
+        if (isNull(k)) {
+            return new String[0];
+        }
+        int length = copy(k);
+        int from = trimStart(0, length);
+        int to = trimEnd(from, length);
+        items.clear();
+        if (to - from >= 3 && scratch[from] == 'c' && scratch[from + 1] == '(' && scratch[to - 1] == ')') {
+            int contentFrom = trimStart(from + 2, to - 1);
+            int contentTo = trimEnd(contentFrom, to - 1);
+            int open = -1;
+            for (int i = contentFrom; i < contentTo; i++) {
+                if (scratch[i] == '"') {
+                    if (open < 0) {
+                        open = i;
+                    } else {
+                        items.add(new String(scratch, open + 1, i - open - 1, StandardCharsets.UTF_8));
+                        open = -1;
+                    }
+                }
+            }
+            if (!items.isEmpty()) {
+                return items.toArray(new String[0]);
+            }
+            splitScratch(contentFrom, contentTo);
+        } else {
+            splitScratch(from, to);
+        }
+        return items.toArray(new String[0]);
+    }
+
+    private void splitScratch(int from, int to) {
+        int pieceStart = from;
+        for (int i = from; i <= to; i++) {
+            if (i == to || scratch[i] == ',') {
+                int s = trimStart(pieceStart, i);
+                int e = trimEnd(s, i);
+                if (e > s) {
+                    items.add(new String(scratch, s, e - s, StandardCharsets.UTF_8));
+                }
+                pieceStart = i + 1;
+            }
+        }
+    }
+
+    /**
+     * @return the value, or {@link Long#MIN_VALUE} if the bytes are not an optionally signed number
+     * of at most {@code maxDigits} digits
+     */
+    private long parseDigits(int from, int to, int maxDigits) {
+        boolean negative = false;
+        int i = from;
+        if (i < to && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i++) == '-';
+        }
+        if (i == to || to - i > maxDigits) {
+            return Long.MIN_VALUE;
+        }
+        long value = 0;
+        for (; i < to; i++) {
+            byte b = buffer.get(i);
+            if (!isDigit(b)) {
+                return Long.MIN_VALUE;
+            }
+            value = value * 10 + (b - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    private long parseScratchLong(int from, int to) {
+        boolean negative = false;
+        int i = from;
+        if (i < to && (scratch[i] == '-' || scratch[i] == '+')) {
+            negative = scratch[i++] == '-';
+        }
+        if (i == to) {
+            return 0L;
+        }
+        if (to - i > 18) {
+            return CsvFields.parseLong(new String(scratch, from, to - from, StandardCharsets.US_ASCII));
+        }
+        long value = 0;
+        for (; i < to; i++) {
+            if (!isDigit(scratch[i])) {
+                return 0L;
+            }
+            value = value * 10 + (scratch[i] - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private int trimmedStart(int k) {
+        int i = starts[k];
+        while (i < ends[k] && (buffer.get(i) & 0xFF) <= ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    private int trimmedEnd(int k, int from) {
+        int i = ends[k];
+        while (i > from && (buffer.get(i - 1) & 0xFF) <= ' ') {
+            i--;
+        }
+        return i;
+    }
+
+    private int trimStart(int from, int to) {
+        while (from < to && (scratch[from] & 0xFF) <= ' ') {
+            from++;
+        }
+        return from;
+    }
+
+    private int trimEnd(int from, int to) {
+        while (to > from && (scratch[to - 1] & 0xFF) <= ' ') {
+            to--;
+        }
+        return to;
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer = null;
+        if (ownsChannel) {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package io.sustc.command;
+
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
+import com.opencsv.RFC4180ParserBuilder;
+import com.opencsv.exceptions.CsvValidationException;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Parses a CSV file on the common fork-join pool.
+ * <p>
+ * One sequential pass over the raw bytes cuts the file about every {@link #CHUNK_SIZE} bytes, only at a
+ * newline outside quotes, so a quoted field spanning several lines is never split. The chunks are then
+ * read, decoded and parsed in parallel, each by its own OpenCSV reader configured like the sequential one,
+ * and the mapped records are concatenated in file order.
+ */
+public final class ParallelCsvReader {
+
+    public static final int CHUNK_SIZE = 4 << 20;
+
+    private ParallelCsvReader() {
+    }
+
+    /**
+     * @param rfc4180 parse with the RFC 4180 parser instead of the default one, which also treats
+     *                a backslash as an escape character
+     * @param mapper  maps the fields of a record, may return {@code null} to drop it
+     * @return the mapped records except the header, in file order
+     */
+    public static <T> List<T> read(Path file, boolean rfc4180, Function<String[], T> mapper) throws IOException {
+        long[] bounds = findBoundaries(file, CHUNK_SIZE, !rfc4180);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return IntStream.range(0, bounds.length - 1)
+                    .parallel()
+                    .mapToObj(i -> parseChunk(channel, bounds[i], bounds[i + 1], i == 0, rfc4180, mapper))
+                    .flatMap(List::stream)
+                    .collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Same as {@link #read}, but every chunk is tokenized by a {@link MappedCsvReader} and the mapper
+     * reads the fields of the current record from it.
+     */
+    public static <T> List<T> readMapped(Path file, boolean rfc4180, Function<MappedCsvReader, T> mapper) throws IOException {
+        long[] bounds = findBoundaries(file, CHUNK_SIZE, !rfc4180);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return IntStream.range(0, bounds.length - 1)
+                    .parallel()
+                    .mapToObj(i -> parseMappedChunk(channel, bounds[i], bounds[i + 1], i == 0, rfc4180, mapper))
+                    .flatMap(List::stream)
+                    .collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Receives the records of {@link #forEachMapped} in file order.
+     */
+    public interface Sink<T> {
+        void accept(T record) throws IOException;
+    }
+
+    /**
+     * Same as {@link #readMapped}, but hands the records to {@code sink} on the calling thread as soon as
+     * their chunk and all chunks before it are parsed. At most one chunk per worker thread is parsed ahead,
+     * so memory stays bounded by that window instead of growing with the file.
+     */
+    public static <T> void forEachMapped(Path file, boolean rfc4180, Function<MappedCsvReader, T> mapper,
+                                         Sink<? super T> sink) throws IOException {
+        forEachMapped(file, CHUNK_SIZE, ForkJoinPool.getCommonPoolParallelism() + 1, rfc4180, mapper, sink);
+    }
+
+    static <T> void forEachMapped(Path file, int chunkSize, int window, boolean rfc4180,
+                                  Function<MappedCsvReader, T> mapper, Sink<? super T> sink) throws IOException {
+        long[] bounds = findBoundaries(file, chunkSize, !rfc4180);
+        Deque<CompletableFuture<List<T>>> parsing = new ArrayDeque<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            try {
+                int next = 0;
+                while (next < bounds.length - 1 || !parsing.isEmpty()) {
+                    while (next < bounds.length - 1 && parsing.size() < window) {
+                        int i = next++;
+                        parsing.add(CompletableFuture.supplyAsync(
+                                () -> parseMappedChunk(channel, bounds[i], bounds[i + 1], i == 0, rfc4180, mapper)));
+                    }
+                    for (T record : parsing.poll().join()) {
+                        sink.accept(record);
+                    }
+                }
+            } finally {
+                // 出错时先等已提交的分块结束，再关闭 channel
+                for (CompletableFuture<List<T>> chunk : parsing) {
+                    chunk.handle((records, e) -> null).join();
+                }
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return offsets where records start, beginning with 0 and ending with the file size
+     */
+    static long[] findBoundaries(Path file, int chunkSize, boolean backslashEscape) throws IOException {
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        boolean inQuotes = false;
+        boolean escaped = false;
+        long position = 0;
+        long next = chunkSize;
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), buffer.length)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                for (int i = 0; i < n; i++, position++) {
+                    byte b = buffer[i];
+                    if (escaped) {
+                        escaped = false;
+                    } else if (b == '\\' && backslashEscape) {
+                        escaped = true;
+                    } else if (b == '"') {
+                        inQuotes = !inQuotes;
+                    } else if (b == '\n' && !inQuotes && position + 1 >= next) {
+                        bounds.add(position + 1);
+                        next = position + 1 + chunkSize;
+                    }
+                }
+            }
+        }
+        if (bounds.get(bounds.size() - 1) != position) {
+            bounds.add(position);
+        }
+        return bounds.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static <T> List<T> parseMappedChunk(FileChannel channel, long start, long end, boolean skipHeader,
+                                                boolean rfc4180, Function<MappedCsvReader, T> mapper) {
+        try (MappedCsvReader reader = new MappedCsvReader(channel, start, end, !rfc4180)) {
+            if (skipHeader) {
+                reader.next();
+            }
+            List<T> records = new ArrayList<>();
+            while (reader.next()) {
+                T record = mapper.apply(reader);
+                if (record != null) {
+                    records.add(record);
+                }
+            }
+            return records;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static <T> List<T> parseChunk(FileChannel channel, long start, long end, boolean skipHeader,
+                                          boolean rfc4180, Function<String[], T> mapper) {
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+            while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) > 0) {
+                // 按位置读取，多个线程可以共用同一个 channel
+            }
+            String text = new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+
+            CSVReaderBuilder builder = new CSVReaderBuilder(new StringReader(text)).withSkipLines(skipHeader ? 1 : 0);
+            if (rfc4180) {
+                builder.withCSVParser(new RFC4180ParserBuilder().build());
+            }
+            List<T> records = new ArrayList<>();
+            try (CSVReader reader = builder.build()) {
+                String[] fields;
+                while ((fields = reader.readNext()) != null) {
+                    records.add(mapper.apply(fields));
+                }
+            }
+            records.removeIf(Objects::isNull);
+            return records;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (CsvValidationException e) {
+            throw new IllegalStateException("Invalid CSV record between bytes " + start + " and " + end, e);
+        }
+    }
+}
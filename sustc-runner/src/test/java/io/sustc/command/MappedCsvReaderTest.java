@@ -0,0 +1,154 @@
+package io.sustc.command;
+
+import com.opencsv.CSVParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Every typed getter of {@link MappedCsvReader} must return what the matching {@link CsvFields} method
+ * returns for the decoded field.
+ */
+class MappedCsvReaderTest {
+
+    private static final String[] VALUES = {
+            "", "  ", "null", " NULL ", "42", " -7 ", "+3", "007", "12345678901234567890", "2147483648",
+            "1.5", "0.1", "3.14159", "-0.25", "1e3", ".5", "5.", "123456789.5", "abc",
+            "2020-01-02 03:04:05", " 2020-01-02T03:04:05 ", "2020-02-30 10:00:00", "2020-01-02 03:04:05.123Z",
+            "2020-01-02", "01/02/2020", "01/02/2020 13:14:15", "2020-13-01 00:00:00",
+            "c(\"a\", \"b c\")", "c(\"Salt\",\"pepper, black\")", "c(a, b)", "c()", "c(\"\")",
+            "(1, 2, 3)", "(\"1\", \"2\")", "( 4 ,5, )", "(7)", "()", "(, 8)", "x,y", "1,2",
+            "line\nbreak", "quote \"inside\"", "é ü 中文"
+    };
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void gettersMatchCsvFields() throws IOException {
+        Path file = write(VALUES, 5);
+        for (int window : new int[]{MappedCsvReader.DEFAULT_WINDOW, 64, 7}) {
+            assertParity(file, VALUES, window);
+        }
+    }
+
+    @Test
+    void handlesCrLfAndUnquotedFields() throws IOException {
+        Path file = dir.resolve("crlf.csv");
+        Files.write(file, "id,name\r\n1, plain \r\n2,\"quoted\"\r\n3,\r\n".getBytes(StandardCharsets.UTF_8));
+        try (MappedCsvReader reader = new MappedCsvReader(file, false)) {
+            assertTrue(reader.next());
+            assertEquals("name", reader.getString(1));
+            assertTrue(reader.next());
+            assertEquals(1, reader.getLong(0));
+            assertEquals(" plain ", reader.getString(1));
+            assertEquals("plain", reader.getTrimmed(1));
+            assertTrue(reader.next());
+            assertEquals("quoted", reader.getString(1));
+            assertTrue(reader.next());
+            assertEquals(2, reader.fieldCount());
+            assertTrue(reader.isNull(1));
+            assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    void decodesBackslashEscapesOnlyWhenAsked() throws IOException {
+        Path file = dir.resolve("escape.csv");
+        Files.write(file, "\"a\\\"b\\\\c\",\"d\"\"e\"\n".getBytes(StandardCharsets.UTF_8));
+        try (MappedCsvReader reader = new MappedCsvReader(file, true)) {
+            assertTrue(reader.next());
+            assertEquals(2, reader.fieldCount());
+            assertEquals("a\"b\\c", reader.getString(0));
+            assertEquals("d\"e", reader.getString(1));
+        }
+        Files.write(file, "\"a\\b\",\"c\\\\\"\n".getBytes(StandardCharsets.UTF_8));
+        try (MappedCsvReader reader = new MappedCsvReader(file, false)) {
+            assertTrue(reader.next());
+            assertEquals("a\\b", reader.getString(0));
+            assertEquals("c\\\\", reader.getString(1));
+        }
+    }
+
+    @Test
+    void readsBackslashesLikeOpenCsv() throws IOException {
+        assertArrayEquals(new String[]{"ab"}, readLine("\"a\\b\""));
+        assertArrayEquals(new String[]{"a", "b"}, readLine("a\\,b"));
+        String[] lines = {
+                "\"a\\b\"", "a\\,b", "\"a\\\"b\",c", "a\\\"b", "\"a\\\\b\"", "a\\\\b",
+                "\"x\\,y\",z", "\\\"q\\\"", "end\\", "\"multi\\\\\",\"b\\\\c\\d\"", "1,\\x,\"\\\"\""
+        };
+        CSVParser parser = new CSVParser();
+        for (String line : lines) {
+            assertArrayEquals(parser.parseLine(line), readLine(line), line);
+        }
+    }
+
+    private String[] readLine(String line) throws IOException {
+        Path file = dir.resolve("line.csv");
+        Files.write(file, (line + "\n").getBytes(StandardCharsets.UTF_8));
+        try (MappedCsvReader reader = new MappedCsvReader(file, true)) {
+            assertTrue(reader.next());
+            String[] fields = new String[reader.fieldCount()];
+            for (int k = 0; k < fields.length; k++) {
+                fields[k] = reader.getString(k);
+            }
+            assertFalse(reader.next());
+            return fields;
+        }
+    }
+
+    private void assertParity(Path file, String[] values, int window) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             MappedCsvReader reader = new MappedCsvReader(channel, false, 0, -1, false, window)) {
+            int k = 0;
+            while (reader.next()) {
+                for (int field = 0; field < reader.fieldCount(); field++, k++) {
+                    String value = values[k];
+                    String where = "window " + window + ", value [" + value + "]";
+                    assertEquals(value, reader.getString(field), where);
+                    assertEquals(CsvFields.trimmed(value), reader.getTrimmed(field), where);
+                    assertEquals(CsvFields.isNull(value), reader.isNull(field), where);
+                    assertEquals(CsvFields.parseLong(value), reader.getLong(field), where);
+                    assertEquals(CsvFields.parseInt(value), reader.getInt(field), where);
+                    assertEquals(CsvFields.parseFloat(value), reader.getFloat(field), where);
+                    assertEquals(CsvFields.parseTimestamp(value), reader.getTimestamp(field), where);
+                    assertArrayEquals(CsvFields.parseCsvLongList(value), reader.getLongList(field), where);
+                    assertArrayEquals(CsvFields.parseCsvList(value), reader.getStringList(field), where);
+                }
+            }
+            assertEquals(values.length, k);
+        }
+    }
+
+    /**
+     * Writes {@code values} quoted, {@code perRow} fields per record.
+     */
+    private Path write(String[] values, int perRow) throws IOException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder csv = new StringBuilder();
+        for (String value : values) {
+            fields.add('"' + value.replace("\"", "\"\"") + '"');
+            if (fields.size() == perRow) {
+                csv.append(String.join(",", fields)).append('\n');
+                fields.clear();
+            }
+        }
+        if (!fields.isEmpty()) {
+            csv.append(String.join(",", fields)).append('\n');
+        }
+        Path file = dir.resolve("values.csv");
+        Files.write(file, csv.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
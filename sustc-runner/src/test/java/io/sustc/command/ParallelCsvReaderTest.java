@@ -0,0 +1,90 @@
+package io.sustc.command;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelCsvReaderTest {
+
+    private static final Function<MappedCsvReader, String> ROW = row -> row.fieldCount() < 2 ? null :
+            row.getLong(0) + "|" + row.getString(1);
+
+    @TempDir
+    Path dir;
+
+    /**
+     * 300 records, some with quoted line breaks, commas and escaped quotes, and a few short rows.
+     */
+    private Path write(boolean backslashEscape) throws IOException {
+        StringBuilder csv = new StringBuilder("id,text\n");
+        for (int i = 0; i < 300; i++) {
+            if (i % 37 == 5) {
+                csv.append(i).append('\n');
+            } else if (i % 3 == 0) {
+                csv.append(i).append(",\"line ").append(i).append("\nnext, \"\"quoted\"\"")
+                        .append(backslashEscape ? " \\\" back" : "").append("\"\n");
+            } else {
+                csv.append(i).append(",plain ").append(i).append('\n');
+            }
+        }
+        Path file = dir.resolve("records" + backslashEscape + ".csv");
+        Files.write(file, csv.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static List<String> sequential(Path file, boolean rfc4180) throws IOException {
+        List<String> records = new ArrayList<>();
+        try (MappedCsvReader row = new MappedCsvReader(file, !rfc4180)) {
+            row.next();
+            while (row.next()) {
+                String record = ROW.apply(row);
+                if (record != null) {
+                    records.add(record);
+                }
+            }
+        }
+        return records;
+    }
+
+    @Test
+    void streamsRecordsInFileOrder() throws IOException {
+        for (boolean rfc4180 : new boolean[]{true, false}) {
+            Path file = write(!rfc4180);
+            List<String> expected = sequential(file, rfc4180);
+            assertEquals(300 - 8, expected.size());
+            for (int chunkSize : new int[]{1, 50, 1000, 1 << 20}) {
+                for (int window : new int[]{1, 2, 8}) {
+                    List<String> records = new ArrayList<>();
+                    ParallelCsvReader.forEachMapped(file, chunkSize, window, rfc4180, ROW, records::add);
+                    assertEquals(expected, records, "chunk " + chunkSize + ", window " + window);
+                }
+            }
+            assertEquals(expected, ParallelCsvReader.readMapped(file, rfc4180, ROW));
+        }
+    }
+
+    @Test
+    void propagatesSinkFailures() throws IOException {
+        Path file = write(false);
+        IOException failure = new IOException("disk full");
+        List<String> written = new ArrayList<>();
+        IOException thrown = assertThrows(IOException.class, () -> ParallelCsvReader.forEachMapped(
+                file, 100, 4, true, ROW, record -> {
+                    if (written.size() == 20) {
+                        throw failure;
+                    }
+                    written.add(record);
+                }));
+        assertSame(failure, thrown);
+        assertEquals(sequential(file, true).subList(0, 20), written);
+    }
+}